@@ -0,0 +1,18 @@
+// Decoding of packed terrain vertex, see MeshAssembler for layout. Every attribute is normalized unsigned byte vector
+const float PACKED_POSITION_SCALE = 8.0;
+
+vec4 unpackPosition(vec4 packed) {
+  return vec4(packed.xyz * (255.0 / PACKED_POSITION_SCALE), 1.0);
+}
+
+vec3 unpackNormal(vec4 packed) {
+  return (packed.xyz * 255.0 - 128.0) / 127.0;
+}
+
+vec2 unpackTextureCord(vec4 packed) {
+  return packed.xy * (255.0 / PACKED_POSITION_SCALE);
+}
+
+vec2 unpackUv(vec4 packed) {
+  return vec2(packed.x + packed.y * 256.0, packed.w + packed.z * 256.0) * (255.0 / 65535.0);
+}
@@ -1,8 +1,8 @@
-attribute vec3 a_normal;
+attribute vec4 a_normal;
 attribute vec4 a_position;
-attribute vec4 a_material;
-attribute vec2 a_texCoord0;
-attribute vec4 a_textureFullCoords;
+attribute vec4 a_texCoord0;
+attribute vec4 a_uvStart;
+attribute vec4 a_uvEnd;
 uniform vec2   u_mapSize;
 uniform mat3   u_normalMatrix;
 uniform mat4   u_projectionMatrix;
@@ -25,19 +25,19 @@ varying vec2   v_uvMul;
 varying float  v_transparent;
 
 void main() {
-  v_normal          = normalize(u_normalMatrix * a_normal);
-  float ao          = a_material.r;
-  float specular    = a_material.g;
-  float waviness    = a_material.a;
-  v_transparent     = a_material.b;
+  v_normal          = normalize(u_normalMatrix * unpackNormal(a_normal));
+  float ao          = a_position.w;
+  float specular    = a_texCoord0.z;
+  float waviness    = a_normal.w;
+  v_transparent     = a_texCoord0.w;
 
-  v_uvStart         = a_textureFullCoords.xy;
-  v_uvMul           = a_textureFullCoords.zw - v_uvStart;
+  v_uvStart         = unpackUv(a_uvStart);
+  v_uvMul           = unpackUv(a_uvEnd) - v_uvStart;
 
   vec3 lightDiffuse = directionalLightDiffuse(u_mainLight, v_normal);
   v_lightDiffuse    = u_ambientLight + vec4(lightDiffuse, 1f);
-  v_textCoord       = a_texCoord0;
-  v_position        = u_worldTransform * a_position;
+  v_textCoord       = unpackTextureCord(a_texCoord0);
+  v_position        = u_worldTransform * unpackPosition(a_position);
   v_position        = applyWind(u_time, u_windDirection, waviness, v_position, u_mapSize, u_windDisplacementTexture);
 
   gl_Position       = u_projectionMatrix * v_position;
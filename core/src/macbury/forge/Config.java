@@ -16,6 +16,22 @@ public class Config {
   public boolean renderStaticOctree = false;
   public boolean renderBoundingBox = false;
   public boolean cacheGeometry      = false;
+  /**
+   * Use {@link macbury.forge.octree.LinearOctree} instead of {@link macbury.forge.octree.OctreeNode} for levels
+   */
+  public boolean linearOctree       = false;
+  /**
+   * Build terrain faces from bitmasks, see {@link macbury.forge.graphics.builders.BinaryGreedyMesher}
+   */
+  public boolean binaryGreedyMeshing = true;
+  /**
+   * How many milliseconds per frame can be spend on uploading geometry and loading assets, see {@link macbury.forge.utils.FrameScheduler}
+   */
+  public float frameWorkBudgetMs   = 4f;
+  /**
+   * Extra milliseconds per frame for the same work while level is loading and nothing else is rendered
+   */
+  public float loadingWorkBudgetMs = 30f;
   public void setRenderDebugTo(RenderDebug debug) {
     renderDebug = debug;
     Gdx.app.postRunnable(new Runnable() {
@@ -10,9 +10,11 @@ import macbury.forge.db.GameDatabase;
 import macbury.forge.graphics.GraphicsUtils;
 import macbury.forge.input.InputManager;
 import macbury.forge.level.LevelManager;
+import macbury.forge.promises.PromiseManager;
 import macbury.forge.screens.ScreenManager;
 import macbury.forge.shaders.utils.ShadersManager;
 import macbury.forge.storage.StorageManager;
+import macbury.forge.utils.FrameScheduler;
 import macbury.forge.entities.EntityManager;
 
 public class ForgE extends Game {
@@ -28,6 +30,8 @@ public class ForgE extends Game {
   public static EntityManager       entities;
   private Array<ForgEBootListener>  bootListeners;
   public static LevelManager        levels;
+  public static PromiseManager      promises;
+  public static FrameScheduler      scheduler;
 
 
   public ForgE(Config config) {
@@ -42,13 +46,16 @@ public class ForgE extends Game {
     storage       = new StorageManager();
     db            = storage.loadOrInitializeDB();
     graphics      = new GraphicsUtils();
+    scheduler     = new FrameScheduler();
     screens       = new ScreenManager(this);
     assets        = new AssetsManager();
+    scheduler.add(assets, FrameScheduler.PRIORITY_ASSETS);
     shaders       = new ShadersManager();
     input         = new InputManager();
     blocks        = new BlocksProvider();
     levels        = new LevelManager(storage);
     entities      = new EntityManager();
+    promises      = new PromiseManager();
     Gdx.input.setInputProcessor(input);
     for (ForgEBootListener listener : bootListeners) {
       listener.afterEngineCreate(this);
@@ -58,6 +65,8 @@ public class ForgE extends Game {
   @Override
   public void render() {
     graphics.updateTime();
+    promises.update(Gdx.graphics.getDeltaTime());
+    scheduler.run(config.frameWorkBudgetMs);
     super.render();
   }
 
@@ -68,5 +77,7 @@ public class ForgE extends Game {
   @Override
   public void dispose() {
     super.dispose();
+    promises.dispose();
+    levels.dispose();
   }
 }
@@ -7,16 +7,16 @@ import com.badlogic.gdx.utils.Array;
 import com.badlogic.gdx.utils.Disposable;
 import macbury.forge.assets.assets.Asset;
 import macbury.forge.assets.assets.TextureAsset;
+import macbury.forge.utils.FrameScheduler;
 
 import java.util.HashMap;
 
 /**
  * Created by macbury on 16.10.14.
  */
-public class AssetsManager implements Disposable {
+public class AssetsManager implements Disposable, FrameScheduler.WorkQueue {
   public static final String ASSETS_PREFIX = "assets/";
   private static final String TAG = "AssetsManager";
-  private static final int MAX_TO_LOAD_PER_TICK = 10;
   private HashMap<String, Asset> loadedAssets;
   private Array<Asset> pendingAssets;
 
@@ -27,7 +27,7 @@ public class AssetsManager implements Disposable {
     pendingAssets = new Array<Asset>();
   }
 
-  public Asset getAsset(Class<? extends Asset> assetClass, String path) {
+  public synchronized Asset getAsset(Class<? extends Asset> assetClass, String path) {
     if (!loadedAssets.containsKey(path)) {
       Asset tempAsset = null;
       try {
@@ -51,7 +51,7 @@ public class AssetsManager implements Disposable {
     return (TextureAsset)getAsset(TextureAsset.class, path);
   }
 
-  public void loadPending() {
+  public synchronized void loadPending() {
     while(pendingAssets.size > 0) {
       Asset asset = pendingAssets.pop();
       Gdx.app.log(TAG, "Loading: " + asset.getPath());
@@ -59,16 +59,19 @@ public class AssetsManager implements Disposable {
     }
   }
 
-  public boolean loadPendingInChunks() {
-    int toLoadLeft = MAX_TO_LOAD_PER_TICK;
-    while(pendingAssets.size > 0 || toLoadLeft == 0) {
-      Asset asset = pendingAssets.pop();
-      Gdx.app.log(TAG, "Loading: " + asset.getPath());
-      asset.load();
-      toLoadLeft--;
-    }
+  @Override
+  public synchronized boolean hasWork() {
+    return pendingAssets.size > 0;
+  }
 
-    return pendingAssets.size == 0;
+  /**
+   * Load one pending asset
+   */
+  @Override
+  public synchronized void runNext() {
+    Asset asset = pendingAssets.pop();
+    Gdx.app.log(TAG, "Loading: " + asset.getPath());
+    asset.load();
   }
 
   @Override
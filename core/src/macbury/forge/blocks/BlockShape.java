@@ -93,6 +93,15 @@ public class BlockShape implements Json.Serializable {
     }
   }
 
+  /**
+   * Precompute templates for all parts, see {@link BlockShapePart#compile()}
+   */
+  public void compile() {
+    for (BlockShapePart part : parts.values()) {
+      part.compile();
+    }
+  }
+
   public BlockShapePart get(Block.Side side) {
     return parts.get(side);
   }
@@ -1,5 +1,6 @@
 package macbury.forge.blocks;
 
+import com.badlogic.gdx.math.Quaternion;
 import com.badlogic.gdx.math.Vector2;
 import com.badlogic.gdx.math.Vector3;
 import com.badlogic.gdx.utils.Array;
@@ -8,9 +9,54 @@ import com.badlogic.gdx.utils.Array;
  * Created by macbury on 18.11.14.
  */
 public class BlockShapePart {
+  private static final Quaternion IDENTITY   = new Quaternion();
+  private static final int ALIGNMENTS        = Block.Side.values().length + 1;
   public Array<Vector3> verticies            = new Array<Vector3>();
   public Array<Vector3> normals              = new Array<Vector3>();
   public Array<Vector2> uvs                  = new Array<Vector2>();
   public Array<BlockShapeTriangle> triangles = new Array<BlockShapeTriangle>();
   public float[]                   waviness  = null;
+  /**
+   * Templates for each {@link Block.Rotation} and alignment, see {@link #template(Block.Rotation, Block.Side)}
+   */
+  private BlockShapePartTemplate[] templates;
+
+  /**
+   * Precompute rotated templates for every rotation and alignment. Must be called after part is loaded
+   */
+  public void compile() {
+    Block.Rotation[] rotations = Block.Rotation.values();
+    Block.Side[] sides         = Block.Side.values();
+    this.templates             = new BlockShapePartTemplate[rotations.length * ALIGNMENTS];
+
+    for (Block.Rotation rotation : rotations) {
+      templates[templateIndex(rotation, null)] = new BlockShapePartTemplate(this, IDENTITY);
+      for (Block.Side alginTo : sides) {
+        templates[templateIndex(rotation, alginTo)] = new BlockShapePartTemplate(this, rotationFor(rotation, alginTo));
+      }
+    }
+  }
+
+  /**
+   * Return compiled part for block rotation and voxel alignment
+   * @param alginTo voxel alignment or null if voxel is not aligned
+   */
+  public BlockShapePartTemplate template(Block.Rotation rotation, Block.Side alginTo) {
+    return templates[templateIndex(rotation, alginTo)];
+  }
+
+  private static int templateIndex(Block.Rotation rotation, Block.Side alginTo) {
+    return rotation.ordinal() * ALIGNMENTS + (alginTo == null ? 0 : alginTo.ordinal() + 1);
+  }
+
+  private static Quaternion rotationFor(Block.Rotation rotation, Block.Side alginTo) {
+    switch (rotation) {
+      case horizontal:
+        return alginTo.rotationHorizontal;
+      case alignToSurface:
+        return alginTo.rotationAllSides;
+      default:
+        return IDENTITY;
+    }
+  }
 }
@@ -0,0 +1,96 @@
+package macbury.forge.blocks;
+
+import com.badlogic.gdx.math.Quaternion;
+import com.badlogic.gdx.math.Vector2;
+import com.badlogic.gdx.math.Vector3;
+
+/**
+ * {@link BlockShapePart} compiled for one rotation. Triangles are unrolled into corners, so corners 3n, 3n+1, 3n+2 make one triangle.
+ * Positions and normals are already rotated, so building face is only scaled add for each corner
+ */
+public class BlockShapePartTemplate {
+  /**
+   * How far rotated normal can be from side direction and still count as facing it
+   */
+  private static final float FACING_EPSILON = 0.001f;
+  public final int cornerCount;
+  /**
+   * Rotated position for each corner, 3 floats per corner
+   */
+  public final float[] positions;
+  /**
+   * Rotated normal for each corner, 3 floats per corner
+   */
+  public final float[] normals;
+  /**
+   * Texture coordinates for each corner, 2 floats per corner
+   */
+  public final float[] uvs;
+  /**
+   * Waviness for each corner or null if part does not wave
+   */
+  public final float[] waviness;
+  /**
+   * Side whose direction is normal of every corner, or null if part is slanted or its corners face different sides
+   */
+  public final Block.Side facing;
+
+  public BlockShapePartTemplate(BlockShapePart part, Quaternion rotation) {
+    this.cornerCount = part.triangles.size * 3;
+    this.positions   = new float[cornerCount * 3];
+    this.normals     = new float[cornerCount * 3];
+    this.uvs         = new float[cornerCount * 2];
+    this.waviness    = part.waviness == null ? null : new float[cornerCount];
+
+    Vector3 temp     = new Vector3();
+    int corner       = 0;
+    for (int i = 0; i < part.triangles.size; i++) {
+      BlockShapeTriangle triangle = part.triangles.get(i);
+      addCorner(part, rotation, triangle.index1, corner++, temp);
+      addCorner(part, rotation, triangle.index2, corner++, temp);
+      addCorner(part, rotation, triangle.index3, corner++, temp);
+    }
+    this.facing = findFacing();
+  }
+
+  private Block.Side findFacing() {
+    if (cornerCount == 0) {
+      return null;
+    }
+    for (Block.Side side : Block.Side.values()) {
+      if (side.direction.isZero()) {
+        continue;
+      }
+      boolean allCorners = true;
+      for (int corner = 0; corner < cornerCount && allCorners; corner++) {
+        allCorners = Math.abs(normals[corner * 3] - side.direction.x) < FACING_EPSILON
+                  && Math.abs(normals[corner * 3 + 1] - side.direction.y) < FACING_EPSILON
+                  && Math.abs(normals[corner * 3 + 2] - side.direction.z) < FACING_EPSILON;
+      }
+      if (allCorners) {
+        return side;
+      }
+    }
+    return null;
+  }
+
+  private void addCorner(BlockShapePart part, Quaternion rotation, int index, int corner, Vector3 temp) {
+    rotation.transform(temp.set(part.verticies.get(index)));
+    positions[corner * 3]     = temp.x;
+    positions[corner * 3 + 1] = temp.y;
+    positions[corner * 3 + 2] = temp.z;
+
+    rotation.transform(temp.set(part.normals.get(index)));
+    normals[corner * 3]       = temp.x;
+    normals[corner * 3 + 1]   = temp.y;
+    normals[corner * 3 + 2]   = temp.z;
+
+    Vector2 uv                = part.uvs.get(index);
+    uvs[corner * 2]           = uv.x;
+    uvs[corner * 2 + 1]       = uv.y;
+
+    if (waviness != null) {
+      waviness[corner]        = part.waviness[index];
+    }
+  }
+}
@@ -4,6 +4,7 @@ import com.badlogic.gdx.Gdx;
 import com.badlogic.gdx.files.FileHandle;
 import com.badlogic.gdx.graphics.GLTexture;
 import com.badlogic.gdx.graphics.g2d.TextureAtlas;
+import com.badlogic.gdx.utils.Array;
 import com.badlogic.gdx.utils.Disposable;
 import com.badlogic.gdx.utils.GdxRuntimeException;
 import com.badlogic.gdx.utils.Json;
@@ -12,7 +13,9 @@ import com.badlogic.gdx.utils.SerializationException;
 import java.io.File;
 import java.io.FilenameFilter;
 import java.util.Arrays;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.zip.CRC32;
 
 /**
  * Created by macbury on 11.11.14.
@@ -28,6 +31,7 @@ public class BlocksProvider implements Disposable {
   private TextureAtlas textureAtlas;
   private boolean reloadAtlas;
   private HashMap<String, BlockShape> shapes;
+  private long version;
 
   public BlocksProvider() {
     reload();
@@ -38,10 +42,45 @@ public class BlocksProvider implements Disposable {
 
     loadShapes();
     loadBlocks();
+    computeVersion();
 
     reloadAtlas = true;
   }
 
+  /**
+   * Checksum of block, shape and atlas files. Changes each time anything that affects terrain geometry changes
+   */
+  private void computeVersion() {
+    CRC32 checksum          = new CRC32();
+    long length             = 0;
+    Array<FileHandle> files = new Array<FileHandle>();
+    files.addAll(Gdx.files.internal(BLOCKS_SHAPE_PATH).list("." + SHAPE_EXT));
+    files.addAll(Gdx.files.internal(BLOCKS_PATH).list("." + BLOCK_EXT));
+    files.sort(new Comparator<FileHandle>() {
+      @Override
+      public int compare(FileHandle a, FileHandle b) {
+        return a.path().compareTo(b.path());
+      }
+    });
+    files.add(getTextureAtlasFile());
+    for (FileHandle file : files) {
+      if (file.exists()) {
+        byte[] bytes = file.readBytes();
+        checksum.update(file.name().getBytes());
+        checksum.update(bytes);
+        length      += bytes.length;
+      }
+    }
+    this.version = (checksum.getValue() << 32) ^ length;
+  }
+
+  /**
+   * @see #computeVersion()
+   */
+  public long getVersion() {
+    return version;
+  }
+
   private void loadShapes() {
     Json json = new Json();
     FileHandle[] shapesFiles = Gdx.files.internal(BLOCKS_SHAPE_PATH).list(new FilenameFilter() {
@@ -56,6 +95,7 @@ public class BlocksProvider implements Disposable {
     for (FileHandle blockShapeFile : shapesFiles) {
       BlockShape blockShape = json.fromJson(BlockShape.class, blockShapeFile.readString());
       blockShape.name       = blockShapeFile.nameWithoutExtension();
+      blockShape.compile();
       this.shapes.put(blockShape.name, blockShape);
       Gdx.app.log(TAG, "Loaded block shape: " + blockShape.name);
     }
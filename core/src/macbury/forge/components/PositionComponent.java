@@ -65,6 +65,11 @@ public class PositionComponent extends BaseComponent implements OctreeObject {
     this.parent = parent;
   }
 
+  @Override
+  public OctreeNode getOctreeParent() {
+    return parent;
+  }
+
   public Matrix4 getWorldTransformMatrix() {
     worldTransform.idt();
     worldTransform.setToTranslationAndScaling(vector, scale);
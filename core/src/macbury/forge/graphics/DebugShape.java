@@ -6,6 +6,7 @@ import com.badlogic.gdx.math.Frustum;
 import com.badlogic.gdx.math.Vector3;
 import com.badlogic.gdx.math.collision.BoundingBox;
 import com.badlogic.gdx.utils.Array;
+import macbury.forge.octree.Octree;
 import macbury.forge.octree.OctreeNode;
 
 /**
@@ -15,6 +16,7 @@ public class DebugShape {
   private final static Vector3 vecA              = new Vector3();
   private final static Vector3 vecB              = new Vector3();
   private final static Array<OctreeNode> nodes   = new Array<OctreeNode>();
+  private final static Array<BoundingBox> boxes  = new Array<BoundingBox>();
 
   public static void draw(ShapeRenderer renderer, BoundingBox box) {
     box.getCorner000(vecA);
@@ -75,11 +77,11 @@ public class DebugShape {
     }
   }
 
-  public static void cullledOctree(ShapeRenderer renderer, OctreeNode rootNode, Frustum frustum) {
-    nodes.clear();
-    rootNode.retriveNodes(nodes, frustum);
-    for (OctreeNode node : nodes) {
-      draw(renderer, node.getBounds());
+  public static void cullledOctree(ShapeRenderer renderer, Octree octree, Frustum frustum) {
+    boxes.clear();
+    octree.retrieveNodeBounds(boxes, frustum);
+    for (BoundingBox box : boxes) {
+      draw(renderer, box);
     }
   }
 }
@@ -35,6 +35,11 @@ public class VoxelBatch implements Disposable {
   protected final Array<BaseRenderable> renderables = new Array<BaseRenderable>();
   private boolean sorted;
   public int renderablesPerFrame;
+  /**
+   * Faces and its triangles that providers skipped before adding to batch, see {@link #skipped(int, long)}
+   */
+  public int facesSkippedPerFrame;
+  public long trianglesSkippedPerFrame;
 
   public VoxelBatch(RenderContext customRenderContext) {
     this.context              = customRenderContext;
@@ -45,6 +50,8 @@ public class VoxelBatch implements Disposable {
     this.spriteCache          = new Array<Sprite3DCache>();
     renderablesPerFrame       = 0;
     trianglesPerFrame         = 0;
+    facesSkippedPerFrame      = 0;
+    trianglesSkippedPerFrame  = 0;
   }
 
   public Sprite3D build(TextureAsset asset, boolean isStatic, boolean transparent) {
@@ -59,6 +66,8 @@ public class VoxelBatch implements Disposable {
     camera = cam;
     sorted = false;
     trianglesPerFrame = 0;
+    facesSkippedPerFrame = 0;
+    trianglesSkippedPerFrame = 0;
   }
 
   /**
@@ -98,6 +107,14 @@ public class VoxelBatch implements Disposable {
     }
   }
 
+  /**
+   * Count faces that were culled by provider and will not be rendered in this frame
+   */
+  public void skipped(int faces, long triangles) {
+    facesSkippedPerFrame     += faces;
+    trianglesSkippedPerFrame += triangles;
+  }
+
   /**
    * Render normally all renderables
    */
@@ -12,6 +12,11 @@ public class BaseRenderable {
   public boolean reflect;
   public Wireframe wireframe;
   public Mesh mesh;
+  /**
+   * Range of mesh indices to render. Whole mesh is rendered when size is 0
+   */
+  public int meshPartOffset = 0;
+  public int meshPartSize   = 0;
   public int primitiveType;
   public Matrix4 worldTransform = new Matrix4();
   public int triangleCount = 0;
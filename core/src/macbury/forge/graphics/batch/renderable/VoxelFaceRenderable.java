@@ -12,14 +12,21 @@ public class VoxelFaceRenderable extends BaseRenderable implements Disposable {
   public Vector3 direction = new Vector3();
   private Chunk parent;
   public BoundingBox boundingBox = new BoundingBox();
+  /**
+   * Range of vertices used by this face in chunk mesh
+   */
+  public int vertexOffset;
+  public int vertexCount;
+  /**
+   * True if every triangle has normal equal to {@link #direction}, see {@link macbury.forge.graphics.builders.VoxelFaceGeometry#alignedToFace}
+   */
+  public boolean alignedToDirection;
 
-
-
+  /**
+   * Mesh is shared between all faces of chunk and it is disposed by {@link Chunk}
+   */
   @Override
   public void dispose() {
-    if (mesh != null) {
-      mesh.dispose();
-    }
     parent = null;
     mesh = null;
   }
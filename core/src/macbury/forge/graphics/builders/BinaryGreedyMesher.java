@@ -0,0 +1,279 @@
+package macbury.forge.graphics.builders;
+
+import macbury.forge.ForgE;
+import macbury.forge.blocks.Block;
+import macbury.forge.blocks.BlockShape;
+import macbury.forge.utils.Vector3i;
+import macbury.forge.voxel.ChunkMap;
+import macbury.forge.voxel.Voxel;
+
+import java.util.Arrays;
+
+/**
+ * Greedy mesher working on bitmasks instead of single voxels. Chunk snapshot with its border is packed into rows of bits for every
+ * axis, so face visibility for whole row is computed with few bitwise operations and quads are found with bit scans.
+ * Produces the same terrain parts in the same order as {@link TerrainBuilder} scalar greedy
+ */
+public class BinaryGreedyMesher {
+  private static final int SIZE      = ChunkSnapshot.SIZE;
+  private static final int ROWS      = SIZE * SIZE;
+  private static final int ROW_MASK  = (1 << ChunkMap.CHUNK_SIZE) - 1;
+  private static final int BLOCK_IDS = 256;
+  /**
+   * Layouts of rows. Index of row is [slice * SIZE + row] and bits are columns
+   * X: slice x, row z, bits y
+   * Y: slice y, row z, bits x
+   * Z: slice z, row x, bits y
+   */
+  private static final int LAYOUT_X = 0;
+  private static final int LAYOUT_Y = 1;
+  private static final int LAYOUT_Z = 2;
+
+  private final TerrainBuilder builder;
+  private ChunkSnapshot snapshot;
+
+  private final int[][] solid         = new int[3][ROWS];
+  private final int[][] transparent   = new int[3][ROWS];
+  private final int[][] emptyInBounds = new int[3][ROWS];
+
+  private final int[] blockSlots      = new int[BLOCK_IDS];
+  private int[][][] blockMasks        = new int[0][][];
+  private Block[] slotBlocks          = new Block[0];
+  private int[] slotShapes            = new int[0];
+  private int slotCount;
+
+  private BlockShape[] shapes         = new BlockShape[0];
+  private int[][][] shapeMasks        = new int[0][][];
+  private int shapeCount;
+
+  private final int[] rows            = new int[ChunkMap.CHUNK_SIZE];
+  private final int[] quadSlot        = new int[ChunkMap.CHUNK_SIZE * ChunkMap.CHUNK_SIZE];
+  private final int[] quadWidth       = new int[ChunkMap.CHUNK_SIZE * ChunkMap.CHUNK_SIZE];
+  private final int[] quadHeight      = new int[ChunkMap.CHUNK_SIZE * ChunkMap.CHUNK_SIZE];
+
+  public BinaryGreedyMesher(TerrainBuilder builder) {
+    this.builder = builder;
+  }
+
+  /**
+   * Pack snapshot into bitmasks. Must be called before building faces of chunk
+   */
+  public void load(ChunkSnapshot snapshot) {
+    this.snapshot = snapshot;
+    clear();
+
+    for (int x = 0; x < SIZE; x++) {
+      for (int y = 0; y < SIZE; y++) {
+        for (int z = 0; z < SIZE; z++) {
+          short voxel = snapshot.getLocal(x, y, z);
+          if (Voxel.isAir(voxel)) {
+            if (!snapshot.isLocalOutOfBounds(x, y, z)) {
+              set(emptyInBounds, x, y, z);
+            }
+          } else {
+            int slot = slotFor(voxel);
+            set(solid, x, y, z);
+            set(blockMasks[slot], x, y, z);
+            set(shapeMasks[slotShapes[slot]], x, y, z);
+            if (slotBlocks[slot].transparent) {
+              set(transparent, x, y, z);
+            }
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Find quads for slices of face in slice mask and pass them to {@link TerrainBuilder#addTerrainPart(Block.Side, short, int, int, int, int, int, Vector3i)}.
+   * Every meshed slice is finished with {@link TerrainBuilder#buildSlice(Block.Side, int)}
+   */
+  public void greedy(Block.Side face, Vector3i origin, int sliceMask) {
+    int layout;
+    int direction;
+    if (face.direction.y != 0) {
+      layout    = LAYOUT_Y;
+      direction = face.direction.y;
+    } else if (face.direction.x != 0) {
+      layout    = LAYOUT_X;
+      direction = face.direction.x;
+    } else {
+      layout    = LAYOUT_Z;
+      direction = face.direction.z;
+    }
+
+    final int[] solidRows         = solid[layout];
+    final int[] transparentRows   = transparent[layout];
+    final int[] emptyInBoundsRows = emptyInBounds[layout];
+
+    for (int a = 0; a < ChunkMap.CHUNK_SIZE; a++) {
+      if ((sliceMask & (1 << a)) == 0) {
+        continue;
+      }
+      int slice         = (a + 1) * SIZE;
+      int nextSlice     = (a + 1 + direction) * SIZE;
+      boolean haveQuads = false;
+
+      for (int slot = 0; slot < slotCount; slot++) {
+        final Block block        = slotBlocks[slot];
+        final int[] blockRows    = blockMasks[slot][layout];
+        final int[] shapeRows    = shapeMasks[slotShapes[slot]][layout];
+        final boolean occulsion  = block.blockShape.occulsion;
+        int haveRows             = 0;
+
+        for (int b = 0; b < ChunkMap.CHUNK_SIZE; b++) {
+          int current = blockRows[slice + b + 1];
+          if (current == 0) {
+            rows[b] = 0;
+            continue;
+          }
+
+          int next    = nextSlice + b + 1;
+          int visible;
+          if (!occulsion) {
+            visible = current;
+          } else if (block.transparent) {
+            visible = current & (~transparentRows[next] | ~blockRows[next]);
+          } else {
+            visible = current & (transparentRows[next] | emptyInBoundsRows[next] | (solidRows[next] & ~shapeRows[next]));
+          }
+
+          rows[b]   = (visible >>> 1) & ROW_MASK;
+          haveRows |= rows[b];
+        }
+
+        if (haveRows != 0) {
+          haveQuads = true;
+          findQuads(slot, block.blockShape.scalable);
+        }
+      }
+
+      if (haveQuads) {
+        emitQuads(face, layout, a, origin);
+      }
+      builder.buildSlice(face, a);
+    }
+  }
+
+  /**
+   * Greedy merge of rows for single block type. Quads are only recorded here and emitted later in scan order
+   */
+  private void findQuads(int slot, boolean scalable) {
+    for (int j = 0; j < ChunkMap.CHUNK_SIZE; j++) {
+      while (rows[j] != 0) {
+        int i       = Integer.numberOfTrailingZeros(rows[j]);
+        int w       = 1;
+        int h       = 1;
+        int runMask = 1 << i;
+
+        if (scalable) {
+          w       = Integer.numberOfTrailingZeros(~(rows[j] >>> i));
+          runMask = (int)(((1L << w) - 1) << i);
+          while (j + h < ChunkMap.CHUNK_SIZE && (rows[j + h] & runMask) == runMask) {
+            rows[j + h] &= ~runMask;
+            h++;
+          }
+        }
+
+        rows[j]          &= ~runMask;
+        int n            = j * ChunkMap.CHUNK_SIZE + i;
+        quadSlot[n]      = slot;
+        quadWidth[n]     = w;
+        quadHeight[n]    = h;
+      }
+    }
+  }
+
+  private void emitQuads(Block.Side face, int layout, int a, Vector3i origin) {
+    for (int n = 0; n < quadWidth.length; n++) {
+      if (quadWidth[n] > 0) {
+        int j       = n / ChunkMap.CHUNK_SIZE;
+        int i       = n % ChunkMap.CHUNK_SIZE;
+        short voxel = voxelAt(layout, a + 1, j + 1, i + 1);
+        builder.addTerrainPart(face, voxel, a, i, j, quadWidth[n], quadHeight[n], origin);
+        quadWidth[n] = 0;
+      }
+    }
+  }
+
+  private short voxelAt(int layout, int slice, int row, int bit) {
+    switch (layout) {
+      case LAYOUT_X:
+        return snapshot.getLocal(slice, bit, row);
+      case LAYOUT_Y:
+        return snapshot.getLocal(bit, slice, row);
+      default:
+        return snapshot.getLocal(row, bit, slice);
+    }
+  }
+
+  private static void set(int[][] masks, int x, int y, int z) {
+    masks[LAYOUT_X][x * SIZE + z] |= 1 << y;
+    masks[LAYOUT_Y][y * SIZE + z] |= 1 << x;
+    masks[LAYOUT_Z][z * SIZE + x] |= 1 << y;
+  }
+
+  private int slotFor(short voxel) {
+    int blockId = Voxel.blockId(voxel) & 0xFF;
+    int slot    = blockSlots[blockId];
+    if (slot == -1) {
+      Block block = ForgE.blocks.find(Voxel.blockId(voxel));
+      if (slotCount >= slotBlocks.length) {
+        int newSize = Math.max(8, slotBlocks.length * 2);
+        slotBlocks  = Arrays.copyOf(slotBlocks, newSize);
+        slotShapes  = Arrays.copyOf(slotShapes, newSize);
+        blockMasks  = Arrays.copyOf(blockMasks, newSize);
+      }
+      slot               = slotCount++;
+      blockSlots[blockId] = slot;
+      slotBlocks[slot]   = block;
+      slotShapes[slot]   = shapeSlotFor(block.blockShape);
+      if (blockMasks[slot] == null) {
+        blockMasks[slot] = new int[3][ROWS];
+      }
+    }
+    return slot;
+  }
+
+  private int shapeSlotFor(BlockShape shape) {
+    for (int i = 0; i < shapeCount; i++) {
+      if (shapes[i] == shape) {
+        return i;
+      }
+    }
+
+    if (shapeCount >= shapes.length) {
+      int newSize = Math.max(4, shapes.length * 2);
+      shapes      = Arrays.copyOf(shapes, newSize);
+      shapeMasks  = Arrays.copyOf(shapeMasks, newSize);
+    }
+    if (shapeMasks[shapeCount] == null) {
+      shapeMasks[shapeCount] = new int[3][ROWS];
+    }
+    shapes[shapeCount] = shape;
+    return shapeCount++;
+  }
+
+  private void clear() {
+    clear(solid);
+    clear(transparent);
+    clear(emptyInBounds);
+    for (int i = 0; i < slotCount; i++) {
+      clear(blockMasks[i]);
+      slotBlocks[i] = null;
+    }
+    for (int i = 0; i < shapeCount; i++) {
+      clear(shapeMasks[i]);
+      shapes[i] = null;
+    }
+    Arrays.fill(blockSlots, -1);
+    slotCount  = 0;
+    shapeCount = 0;
+  }
+
+  private static void clear(int[][] masks) {
+    for (int i = 0; i < masks.length; i++) {
+      Arrays.fill(masks[i], 0);
+    }
+  }
+}
@@ -1,5 +1,6 @@
 package macbury.forge.graphics.builders;
 
+import com.badlogic.gdx.graphics.Mesh;
 import com.badlogic.gdx.math.Vector3;
 import com.badlogic.gdx.math.collision.BoundingBox;
 import com.badlogic.gdx.utils.Array;
@@ -8,6 +9,8 @@ import macbury.forge.graphics.batch.renderable.VoxelFaceRenderable;
 import macbury.forge.octree.OctreeNode;
 import macbury.forge.octree.OctreeObject;
 import macbury.forge.utils.Vector3i;
+import macbury.forge.voxel.ChunkMap;
+import macbury.forge.voxel.PalettedVoxelStorage;
 
 /**
  * Created by macbury on 19.10.14.
@@ -30,7 +33,31 @@ public class Chunk implements OctreeObject, Disposable {
   public Vector3i end           = new Vector3i();
   public BoundingBox boundingBox  = new BoundingBox();
   public boolean needRebuild      = true;
+  /**
+   * Incremented each time chunk geometry job is created, see {@link ChunkGeometry}
+   */
+  public int geometryVersion      = 0;
+  /**
+   * Dirty slices and cached slice geometry used for incremental rebuilds
+   */
+  public final ChunkSlices slices = new ChunkSlices();
+  /**
+   * False if voxels of chunk are still on disk, see {@link macbury.forge.voxel.ChunkMap#ensureLoaded(Chunk)}
+   */
+  public boolean loaded           = true;
+  /**
+   * True if voxels changed since level was saved, see {@link macbury.forge.level.LevelSnapshot}
+   */
+  public boolean modified         = false;
   public Array<VoxelFaceRenderable> renderables = new Array<VoxelFaceRenderable>(6);
+  /**
+   * Meshes with packed geometry of all faces. Faces render only its ranges
+   */
+  public final Array<Mesh> meshes = new Array<Mesh>(1);
+  /**
+   * Voxels of this chunk, indexed by {@link macbury.forge.voxel.ChunkMap#localIndex(int, int, int)}
+   */
+  public final PalettedVoxelStorage voxels = new PalettedVoxelStorage(ChunkMap.CHUNK_ARRAY_SIZE);
   public OctreeNode parent;
   private final static Vector3 temp = new Vector3();
 
@@ -51,6 +78,11 @@ public class Chunk implements OctreeObject, Disposable {
     this.parent = parent;
   }
 
+  @Override
+  public OctreeNode getOctreeParent() {
+    return parent;
+  }
+
   @Override
   public void dispose() {
     clearFaces();
@@ -61,10 +93,17 @@ public class Chunk implements OctreeObject, Disposable {
     this.renderables.add(face);
   }
 
+  public void addMesh(Mesh mesh) {
+    this.meshes.add(mesh);
+  }
+
   public void clearFaces() {
     while(renderables.size > 0) {
       renderables.pop().dispose();
     }
+    while(meshes.size > 0) {
+      meshes.pop().dispose();
+    }
   }
 
   /**
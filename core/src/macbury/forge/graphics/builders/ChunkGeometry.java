@@ -0,0 +1,151 @@
+package macbury.forge.graphics.builders;
+
+import com.badlogic.gdx.graphics.Mesh;
+import com.badlogic.gdx.utils.Array;
+import macbury.forge.graphics.mesh.MeshAssembler;
+import macbury.forge.graphics.mesh.MeshVertexInfo;
+import macbury.forge.voxel.VoxelMap;
+
+/**
+ * Single chunk rebuild job. Snapshot is taken on OpenGL thread, faces are assembled by {@link TerrainBuilder} on worker thread
+ * and uploaded back on OpenGL thread with {@link #applyTo()}
+ */
+public class ChunkGeometry {
+  /**
+   * Indices are unsigned shorts, so one mesh can address only this many vertices
+   */
+  public static final int MAX_VERTICES_PER_MESH = 65536;
+  public final Chunk chunk;
+  /**
+   * Value of {@link Chunk#geometryVersion} when job was created. Older results are discarded
+   */
+  public final int version;
+  public final ChunkSnapshot snapshot;
+  public final Array<VoxelFaceGeometry> faces;
+  /**
+   * Slices to mesh for each face in {@link ChunkSlices#FACES}. Other slices are taken from cached geometry
+   */
+  public final int[] dirtySlices;
+  /**
+   * Cached slice geometry copied when job was created. Builder replaces entries of dirty slices, see {@link ChunkSlices#geometryIndex(int, int, boolean)}
+   */
+  public final ChunkSliceGeometry[] slices;
+  /**
+   * Vertices and indices of all faces packed by {@link #pack()}. Usually there is only one mesh per chunk
+   */
+  public final Array<float[]> meshVertices;
+  public final Array<short[]> meshIndices;
+  public MeshVertexInfo.AttributeType[] attributes;
+  /**
+   * True if faces and meshes were read from {@link macbury.forge.terrain.GeometryCache} and slices were not built
+   */
+  public boolean fromCache;
+  public Throwable error;
+
+  public ChunkGeometry(Chunk chunk) {
+    this.chunk        = chunk;
+    this.version      = ++chunk.geometryVersion;
+    this.snapshot     = new ChunkSnapshot();
+    this.faces        = new Array<VoxelFaceGeometry>(12);
+    this.meshVertices = new Array<float[]>(1);
+    this.meshIndices  = new Array<short[]>(1);
+    this.dirtySlices  = new int[ChunkSlices.FACE_COUNT];
+    this.slices       = new ChunkSliceGeometry[ChunkSlices.GEOMETRY_COUNT];
+    chunk.slices.take(dirtySlices, slices);
+  }
+
+  public void snapshot(VoxelMap map) {
+    snapshot.copy(map, chunk);
+  }
+
+  /**
+   * Check if chunk was not queued to rebuild again after this job was created
+   */
+  public boolean isStale() {
+    return chunk.geometryVersion != version;
+  }
+
+  /**
+   * Pack vertices and indices of all faces into shared buffers and record range of each face. Does not touch OpenGL
+   */
+  public void pack() {
+    meshVertices.clear();
+    meshIndices.clear();
+    int start = 0;
+    while (start < faces.size) {
+      int end         = start;
+      int vertexCount = 0;
+      int indexCount  = 0;
+      int floatCount  = 0;
+      while (end < faces.size && (end == start || vertexCount + faces.get(end).vertexCount <= MAX_VERTICES_PER_MESH)) {
+        VoxelFaceGeometry face = faces.get(end);
+        vertexCount += face.vertexCount;
+        indexCount  += face.indices.length;
+        floatCount  += face.vertices.length;
+        end++;
+      }
+
+      float[] vertices = new float[floatCount];
+      short[] indices  = new short[indexCount];
+      int vertexOffset = 0;
+      int indexOffset  = 0;
+      int floatOffset  = 0;
+      for (int i = start; i < end; i++) {
+        VoxelFaceGeometry face = faces.get(i);
+        System.arraycopy(face.vertices, 0, vertices, floatOffset, face.vertices.length);
+        for (int j = 0; j < face.indices.length; j++) {
+          indices[indexOffset + j] = (short)((face.indices[j] & 0xFFFF) + vertexOffset);
+        }
+
+        face.meshIndex    = meshVertices.size;
+        face.vertexOffset = vertexOffset;
+        face.indexOffset  = indexOffset;
+        face.indexCount   = face.indices.length;
+        vertexOffset     += face.vertexCount;
+        indexOffset      += face.indices.length;
+        floatOffset      += face.vertices.length;
+        attributes        = face.attributes;
+        face.vertices     = null;
+        face.indices      = null;
+      }
+
+      meshVertices.add(vertices);
+      meshIndices.add(indices);
+      start = end;
+    }
+  }
+
+  /**
+   * Replace chunk faces with assembled geometry and cache its slices. Must be called on OpenGL thread
+   */
+  public void applyTo() {
+    if (fromCache) {
+      chunk.slices.commitWithoutSlices();
+    } else {
+      chunk.slices.commit(slices);
+    }
+    chunk.clearFaces();
+    for (int i = 0; i < meshVertices.size; i++) {
+      float[] vertices = meshVertices.get(i);
+      short[] indices  = meshIndices.get(i);
+      Mesh mesh        = new Mesh(true, vertices.length / vertexSize(), indices.length, MeshAssembler.vertexAttributes(attributes));
+      mesh.setVertices(vertices);
+      mesh.setIndices(indices);
+      mesh.setAutoBind(false);
+      chunk.addMesh(mesh);
+    }
+
+    for (int i = 0; i < faces.size; i++) {
+      VoxelFaceGeometry face = faces.get(i);
+      chunk.addFace(face.toRenderable(chunk, chunk.meshes.get(face.meshIndex)));
+    }
+  }
+
+  private int vertexSize() {
+    int size = 0;
+    for (MeshVertexInfo.AttributeType attribute : attributes) {
+      size += attribute.floatSize();
+    }
+    return size;
+  }
+}
@@ -0,0 +1,32 @@
+package macbury.forge.graphics.builders;
+
+import com.badlogic.gdx.math.collision.BoundingBox;
+import macbury.forge.graphics.batch.Wireframe;
+
+/**
+ * Assembled vertices of one slice of chunk face, solid or transparent. Never modified after creation, so it can be shared
+ * between cache in {@link ChunkSlices} and rebuild jobs on worker threads
+ */
+public class ChunkSliceGeometry {
+  public final float[] vertices;
+  /**
+   * Indices starting from 0 for first vertex of this slice
+   */
+  public final short[] indices;
+  public final int vertexCount;
+  public final Wireframe wireframe;
+  public final BoundingBox boundingBox;
+  /**
+   * True if every triangle has normal of face direction, see {@link VoxelFaceGeometry#alignedToFace}
+   */
+  public final boolean alignedToFace;
+
+  public ChunkSliceGeometry(float[] vertices, short[] indices, int vertexCount, Wireframe wireframe, BoundingBox boundingBox, boolean alignedToFace) {
+    this.vertices      = vertices;
+    this.indices       = indices;
+    this.vertexCount   = vertexCount;
+    this.wireframe     = wireframe;
+    this.boundingBox   = boundingBox;
+    this.alignedToFace = alignedToFace;
+  }
+}
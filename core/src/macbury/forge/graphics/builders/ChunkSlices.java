@@ -0,0 +1,125 @@
+package macbury.forge.graphics.builders;
+
+import macbury.forge.blocks.Block;
+import macbury.forge.voxel.ChunkMap;
+
+import java.util.Arrays;
+
+/**
+ * Dirty flags and cached geometry for every slice of every face direction of chunk. Voxel edit marks only slices that can
+ * change, so rebuild job meshes only them and reuses cached geometry of the rest. All methods must be called on thread that
+ * modifies map
+ */
+public class ChunkSlices {
+  /**
+   * Face directions that are meshed for chunk
+   */
+  public static final Block.Side[] FACES = { Block.Side.top, Block.Side.bottom, Block.Side.left, Block.Side.right, Block.Side.back, Block.Side.front };
+  public static final int FACE_COUNT     = FACES.length;
+  public static final int ALL_SLICES     = (1 << ChunkMap.CHUNK_SIZE) - 1;
+  /**
+   * Size of geometry table, one solid and one transparent entry for each slice of each face
+   */
+  public static final int GEOMETRY_COUNT = FACE_COUNT * ChunkMap.CHUNK_SIZE * 2;
+  private static final int[] FACE_INDEX  = new int[Block.Side.values().length];
+
+  static {
+    Arrays.fill(FACE_INDEX, -1);
+    for (int i = 0; i < FACES.length; i++) {
+      FACE_INDEX[FACES[i].ordinal()] = i;
+    }
+  }
+
+  /**
+   * Bit for each slice changed since last rebuild job was created
+   */
+  private final int[] dirty    = new int[FACE_COUNT];
+  /**
+   * Bit for each slice sent to rebuild jobs that did not finish yet
+   */
+  private final int[] inFlight = new int[FACE_COUNT];
+  private final ChunkSliceGeometry[] geometry = new ChunkSliceGeometry[GEOMETRY_COUNT];
+
+  public ChunkSlices() {
+    markAllDirty();
+  }
+
+  public static int faceIndex(Block.Side face) {
+    return FACE_INDEX[face.ordinal()];
+  }
+
+  public static int geometryIndex(int faceIndex, int slice, boolean transparent) {
+    return ((faceIndex * ChunkMap.CHUNK_SIZE) + slice) * 2 + (transparent ? 1 : 0);
+  }
+
+  /**
+   * Return slice of face that contains voxel at chunk local position
+   */
+  public static int sliceFor(Block.Side face, int x, int y, int z) {
+    if (face.direction.x != 0) {
+      return x;
+    } else if (face.direction.y != 0) {
+      return y;
+    } else {
+      return z;
+    }
+  }
+
+  public void markDirty(Block.Side face, int slice) {
+    dirty[faceIndex(face)] |= 1 << slice;
+  }
+
+  public void markAllDirty() {
+    Arrays.fill(dirty, ALL_SLICES);
+  }
+
+  public boolean isDirty() {
+    for (int i = 0; i < FACE_COUNT; i++) {
+      if (dirty[i] != 0) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Copy slices to rebuild and cached geometry for new rebuild job. Slices of jobs still in flight are included again,
+   * because their results will be discarded as stale
+   */
+  public void take(int[] outDirty, ChunkSliceGeometry[] outGeometry) {
+    for (int i = 0; i < FACE_COUNT; i++) {
+      inFlight[i] |= dirty[i];
+      outDirty[i]  = inFlight[i];
+      dirty[i]     = 0;
+    }
+    System.arraycopy(geometry, 0, outGeometry, 0, GEOMETRY_COUNT);
+  }
+
+  /**
+   * Store geometry of finished job. Job must be the newest one created for chunk
+   */
+  public void commit(ChunkSliceGeometry[] builtGeometry) {
+    System.arraycopy(builtGeometry, 0, geometry, 0, GEOMETRY_COUNT);
+    Arrays.fill(inFlight, 0);
+  }
+
+  /**
+   * Finished job took geometry from {@link macbury.forge.terrain.GeometryCache} instead of building slices, so cached slices
+   * are dropped and all of them will be built by next job
+   */
+  public void commitWithoutSlices() {
+    Arrays.fill(geometry, null);
+    Arrays.fill(inFlight, 0);
+    markAllDirty();
+  }
+
+  /**
+   * Newest job failed, so its slices need to be rebuilt again
+   */
+  public void restore() {
+    for (int i = 0; i < FACE_COUNT; i++) {
+      dirty[i]   |= inFlight[i];
+      inFlight[i] = 0;
+    }
+  }
+}
@@ -0,0 +1,102 @@
+package macbury.forge.graphics.builders;
+
+import macbury.forge.utils.Vector3i;
+import macbury.forge.voxel.ChunkMap;
+import macbury.forge.voxel.Voxel;
+import macbury.forge.voxel.VoxelMap;
+
+/**
+ * Copy of chunk voxels with one voxel border around it. Mesh builders running outside of OpenGL thread read only from snapshot,
+ * so map can be edited while chunk geometry is being built.
+ */
+public class ChunkSnapshot {
+  public static final int SIZE = ChunkMap.CHUNK_SIZE + 2;
+  private final short[] voxels = new short[SIZE * SIZE * SIZE];
+  private final Vector3i origin = new Vector3i();
+  private int mapWidth;
+  private int mapHeight;
+  private int mapDepth;
+
+  /**
+   * Copy voxels for chunk and its border. Must be called on thread that modifies map
+   */
+  public void copy(VoxelMap map, Chunk chunk) {
+    origin.set(chunk.start).sub(1, 1, 1);
+    mapWidth  = map.getWidth();
+    mapHeight = map.getHeight();
+    mapDepth  = map.getDepth();
+
+    int i = 0;
+    for (int x = 0; x < SIZE; x++) {
+      for (int y = 0; y < SIZE; y++) {
+        for (int z = 0; z < SIZE; z++) {
+          voxels[i++] = map.getVoxelDataForPosition(origin.x + x, origin.y + y, origin.z + z);
+        }
+      }
+    }
+  }
+
+  /**
+   * Return packed voxel for map position. Positions outside of snapshot are treated as air
+   */
+  public short get(int x, int y, int z) {
+    x -= origin.x;
+    y -= origin.y;
+    z -= origin.z;
+    if (x < 0 || y < 0 || z < 0 || x >= SIZE || y >= SIZE || z >= SIZE) {
+      return Voxel.AIR;
+    } else {
+      return voxels[(x * SIZE + y) * SIZE + z];
+    }
+  }
+
+  public short get(Vector3i position) {
+    return get(position.x, position.y, position.z);
+  }
+
+  /**
+   * Return packed voxel for snapshot position, where 0 and {@link #SIZE} - 1 are border voxels
+   */
+  public short getLocal(int x, int y, int z) {
+    return voxels[(x * SIZE + y) * SIZE + z];
+  }
+
+  /**
+   * Check if snapshot position lies outside of map
+   */
+  public boolean isLocalOutOfBounds(int x, int y, int z) {
+    x += origin.x;
+    y += origin.y;
+    z += origin.z;
+    return x < 0 || y < 0 || z < 0 || x >= mapWidth || y >= mapHeight || z >= mapDepth;
+  }
+
+  /**
+   * 64 bit FNV-1a hash of voxels and position of snapshot in map. Geometry of chunk depends only on this, so it is used as
+   * key of {@link macbury.forge.terrain.GeometryCache}
+   */
+  public long contentHash() {
+    long hash = 0xcbf29ce484222325L;
+    hash      = mix(hash, origin.x);
+    hash      = mix(hash, origin.y);
+    hash      = mix(hash, origin.z);
+    hash      = mix(hash, mapWidth);
+    hash      = mix(hash, mapHeight);
+    hash      = mix(hash, mapDepth);
+    for (int i = 0; i < voxels.length; i++) {
+      hash = mix(hash, voxels[i]);
+    }
+    return hash;
+  }
+
+  private static long mix(long hash, int value) {
+    hash = (hash ^ (value & 0xFF)) * 0x100000001b3L;
+    hash = (hash ^ ((value >>> 8) & 0xFF)) * 0x100000001b3L;
+    hash = (hash ^ ((value >>> 16) & 0xFF)) * 0x100000001b3L;
+    return (hash ^ (value >>> 24)) * 0x100000001b3L;
+  }
+
+  public boolean isOutOfBounds(Vector3i position) {
+    return position.x < 0 || position.y < 0 || position.z < 0 || position.x >= mapWidth || position.y >= mapHeight || position.z >= mapDepth;
+  }
+}
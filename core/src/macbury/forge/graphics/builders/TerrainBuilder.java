@@ -1,14 +1,14 @@
 package macbury.forge.graphics.builders;
 
 import com.badlogic.gdx.Gdx;
-import com.badlogic.gdx.graphics.GL30;
 import com.badlogic.gdx.math.Vector3;
+import com.badlogic.gdx.math.collision.BoundingBox;
 import com.badlogic.gdx.utils.Array;
 import com.badlogic.gdx.utils.GdxRuntimeException;
 import com.badlogic.gdx.utils.Pool;
 import macbury.forge.ForgE;
 import macbury.forge.blocks.Block;
-import macbury.forge.graphics.batch.renderable.VoxelFaceRenderable;
+import macbury.forge.graphics.batch.Wireframe;
 import macbury.forge.graphics.mesh.MeshVertexInfo;
 import macbury.forge.graphics.mesh.VoxelsAssembler;
 import macbury.forge.utils.Vector3i;
@@ -26,6 +26,10 @@ public class TerrainBuilder {
   private final VoxelsAssembler transparentVoxelAssembler;
 
   private static final String TAG = "TerrainBuilder";
+  /**
+   * Compact terrain vertex, 5 packed floats (20 bytes). Decoded in shaders/helpers/packed_vertex.glsl
+   */
+  public static final MeshVertexInfo.AttributeType[] ATTRIBUTES = { MeshVertexInfo.AttributeType.PackedPosition, MeshVertexInfo.AttributeType.PackedNormal, MeshVertexInfo.AttributeType.PackedTextureCord, MeshVertexInfo.AttributeType.PackedTextureStart, MeshVertexInfo.AttributeType.PackedTextureEnd };
 
   private final ChunkMap map;
   public final TerrainCursor cursor;
@@ -37,9 +41,14 @@ public class TerrainBuilder {
   private Vector3i nextTileToCheck = new Vector3i();
   private final VoxelDef voxelDef;
   private Array<TerrainPart> tempTerrainParts  = new Array<TerrainPart>();
-  private static Voxel mask[] = new Voxel[ChunkMap.CHUNK_SIZE * ChunkMap.CHUNK_SIZE];
+  private final short mask[] = new short[ChunkMap.CHUNK_SIZE * ChunkMap.CHUNK_SIZE];
 
-  private static Pool<TerrainPart> terrainPartPool = new Pool<TerrainPart>() {
+  private ChunkSnapshot snapshot;
+  private ChunkGeometry geometry;
+  private final BinaryGreedyMesher binaryMesher;
+  private boolean useBinaryMesher;
+
+  private final Pool<TerrainPart> terrainPartPool = new Pool<TerrainPart>() {
     @Override
     protected TerrainPart newObject() {
       TerrainPart part = new TerrainPart();
@@ -56,20 +65,25 @@ public class TerrainBuilder {
     this.cursor                    = new TerrainCursor();
 
     this.voxelDef                  = new VoxelDef(map);
-    this.solidVoxelAssembler       = new VoxelsAssembler();
-    this.transparentVoxelAssembler = new VoxelsAssembler();
+    this.binaryMesher              = new BinaryGreedyMesher(this);
+    this.solidVoxelAssembler       = new VoxelsAssembler(ATTRIBUTES);
+    this.transparentVoxelAssembler = new VoxelsAssembler(ATTRIBUTES);
+  }
+
+  private Block blockFor(short voxel) {
+    return ForgE.blocks.find(Voxel.blockId(voxel));
   }
 
-  private boolean isVoxelTransparent(Voxel voxel) {
-    return voxel != null && voxel.getBlock().transparent;
+  private boolean isVoxelTransparent(short voxel) {
+    return !Voxel.isAir(voxel) && blockFor(voxel).transparent;
   }
 
-  private boolean isVoxelBlockHaveOcculsion(Voxel voxel) {
-    return voxel != null && voxel.getBlock().blockShape.occulsion;
+  private boolean isVoxelBlockHaveOcculsion(short voxel) {
+    return !Voxel.isAir(voxel) && blockFor(voxel).blockShape.occulsion;
   }
 
-  private boolean doVoxelsDontHaveTheSameShape(Voxel voxelA, Voxel voxelB) {
-    return voxelB != null && (voxelB.getBlock().blockShape != voxelA.getBlock().blockShape);
+  private boolean doVoxelsDontHaveTheSameShape(short voxelA, short voxelB) {
+    return !Voxel.isAir(voxelB) && (blockFor(voxelB).blockShape != blockFor(voxelA).blockShape);
   }
 
   public void begin() {
@@ -95,34 +109,75 @@ public class TerrainBuilder {
     return facesToBuild.size > 0;
   }
 
-  public void buildFaceForChunk(Chunk chunk) {
+  /**
+   * Build geometry for chunk and upload it right away. Must be called on OpenGL thread
+   */
+  public void build(Chunk chunk) {
+    ChunkGeometry geometry = new ChunkGeometry(chunk);
+    geometry.snapshot(map);
+    assemble(geometry);
+    geometry.applyTo();
+  }
+
+  /**
+   * Assemble all faces for snapshot in geometry. Only dirty slices are meshed, rest is taken from cached slice geometry.
+   * Touches only snapshot and builder state, so it can run on worker thread
+   */
+  public void assemble(ChunkGeometry geometry) {
+    begin(); {
+      this.geometry   = geometry;
+      this.snapshot   = geometry.snapshot;
+      cursor.set(geometry.chunk);
+      useBinaryMesher = ForgE.config.binaryGreedyMeshing;
+      if (useBinaryMesher) {
+        binaryMesher.load(geometry.snapshot);
+      }
+      try {
+        while(next()) {
+          buildFaceForChunk(geometry);
+        }
+      } finally {
+        terrainPartPool.freeAll(terrainParts);
+        terrainParts.clear();
+        this.geometry = null;
+      }
+    } end();
+    geometry.pack();
+  }
+
+  public void buildFaceForChunk(ChunkGeometry geometry) {
     Block.Side side = facesToBuild.pop();
     if (side == Block.Side.all || side == Block.Side.side) {
       throw new GdxRuntimeException("I cannot assemble chunk face for: " + side.toString());
     }
-    resetMask();
-    greedy(side);
-    if (terrainParts.size > 0) {
-      createTrianglesFor(side, terrainParts, solidVoxelAssembler, transparentVoxelAssembler);
-
-      buildFaceForChunkWithAssembler(chunk, solidVoxelAssembler, false, side);
-      buildFaceForChunkWithAssembler(chunk, transparentVoxelAssembler, true, side);
-
-      terrainPartPool.freeAll(terrainParts);
-      terrainParts.clear();
+    int faceIndex   = ChunkSlices.faceIndex(side);
+    int sliceMask   = geometry.dirtySlices[faceIndex];
+    if (sliceMask != 0) {
+      if (useBinaryMesher) {
+        binaryMesher.greedy(side, cursor.start, sliceMask);
+      } else {
+        resetMask();
+        greedy(side, sliceMask);
+      }
     }
+
+    buildFaceForChunkFromSlices(geometry, faceIndex, side, false);
+    buildFaceForChunkFromSlices(geometry, faceIndex, side, true);
   }
 
-  private boolean isAir(Voxel voxel) {
-    return voxel == null || voxel.isAir();
+  private boolean isAir(short voxel) {
+    return Voxel.isAir(voxel);
   }
 
-  private boolean isVoxelsTheSame(Voxel a, Voxel b) {
-    return a != null && b != null && a.equals(b) && a.isScalable();
+  private boolean isVoxelsTheSame(short a, short b) {
+    return !Voxel.isAir(a) && Voxel.blockId(a) == Voxel.blockId(b) && blockFor(a).blockShape.scalable;
   }
 
-  private void greedy(Block.Side face) {
+  private void greedy(Block.Side face, int sliceMask) {
     for (int a = 0; a < ChunkMap.CHUNK_SIZE; a++) {
+      if ((sliceMask & (1 << a)) == 0) {
+        continue;
+      }
       int n = 0;
       for (int b = 0; b < ChunkMap.CHUNK_SIZE; b++) {
         for (int c = 0; c < ChunkMap.CHUNK_SIZE; c++) {
@@ -145,6 +200,7 @@ public class TerrainBuilder {
       }
 
       createQuads(face, a, cursor.start);
+      buildSlice(face, a);
     }
   }
 
@@ -153,7 +209,7 @@ public class TerrainBuilder {
 
     for(int j = 0; j < ChunkMap.CHUNK_SIZE; j++) {
       for (int i = 0; i < ChunkMap.CHUNK_SIZE; ) {
-        if (mask[n] == null || mask[n].isAir()) {
+        if (isAir(mask[n])) {
           i++;
           n++;
         } else {
@@ -172,36 +228,10 @@ public class TerrainBuilder {
           }
 
           //Gdx.app.log(TAG, "New quad: " + mask[n].blockId + " size=" + w+"x"+h + " at " + "X: " + i + " Y: " + j);
-
-          TerrainPart currentPart     = terrainPartPool.obtain();
-          currentPart.face            = face;
-          currentPart.block           = mask[n].getBlock();
-          currentPart.voxel           = mask[n];
-
-
-          if (face == Block.Side.front || face == Block.Side.back) {
-            currentPart.uvTiling.set(h,w);
-            currentPart.voxelPosition.set(j, i, a);
-            currentPart.voxelSize.set(h, w, 1);
-
-          } else if (face == Block.Side.left || face == Block.Side.right) {
-            currentPart.uvTiling.set(h,w);
-            currentPart.voxelPosition.set(a, i, j);
-            currentPart.voxelSize.set(1, w, h);
-          } else {
-            currentPart.uvTiling.set(w,h);
-            currentPart.voxelPosition.set(i, a, j);
-            currentPart.voxelSize.set(w, 1, h);
-
-          }
-          currentPart.voxelPosition.add(origin);
-
-          terrainParts.add(currentPart);
-
-          //Gdx.app.log(TAG, "Quad: " + currentPart.toString() + " with origin " + origin.toString());
+          addTerrainPart(face, mask[n], a, i, j, w, h, origin);
 
           for(int l = 0; l < h; ++l) {
-            for(int k = 0; k < w; ++k) { mask[n + k + l * ChunkMap.CHUNK_SIZE] = null; }
+            for(int k = 0; k < w; ++k) { mask[n + k + l * ChunkMap.CHUNK_SIZE] = Voxel.AIR; }
           }
 
           i += w;
@@ -211,37 +241,91 @@ public class TerrainBuilder {
     }
   }
 
+  /**
+   * Triangulate quads found in slice of face and store them in geometry of current job
+   */
+  protected void buildSlice(Block.Side face, int slice) {
+    if (terrainParts.size > 0) {
+      createTrianglesFor(face, terrainParts, solidVoxelAssembler, transparentVoxelAssembler);
+      terrainPartPool.freeAll(terrainParts);
+      terrainParts.clear();
+    }
+
+    int faceIndex = ChunkSlices.faceIndex(face);
+    geometry.slices[ChunkSlices.geometryIndex(faceIndex, slice, false)] = buildSliceWithAssembler(solidVoxelAssembler);
+    geometry.slices[ChunkSlices.geometryIndex(faceIndex, slice, true)]  = buildSliceWithAssembler(transparentVoxelAssembler);
+  }
+
+  /**
+   * Add quad found in slice a of face. Row j and column i are in the same order as in mask
+   */
+  protected void addTerrainPart(Block.Side face, short voxel, int a, int i, int j, int w, int h, Vector3i origin) {
+    TerrainPart currentPart     = terrainPartPool.obtain();
+    currentPart.face            = face;
+    currentPart.block           = blockFor(voxel);
+    currentPart.voxel           = voxel;
+
+    if (face == Block.Side.front || face == Block.Side.back) {
+      currentPart.uvTiling.set(h,w);
+      currentPart.voxelPosition.set(j, i, a);
+      currentPart.voxelSize.set(h, w, 1);
+
+    } else if (face == Block.Side.left || face == Block.Side.right) {
+      currentPart.uvTiling.set(h,w);
+      currentPart.voxelPosition.set(a, i, j);
+      currentPart.voxelSize.set(1, w, h);
+    } else {
+      currentPart.uvTiling.set(w,h);
+      currentPart.voxelPosition.set(i, a, j);
+      currentPart.voxelSize.set(w, 1, h);
+
+    }
+    currentPart.voxelPosition.add(origin);
+
+    terrainParts.add(currentPart);
+    //Gdx.app.log(TAG, "Quad: " + currentPart.toString() + " with origin " + origin.toString());
+  }
+
   private int createMask(Block.Side face, int n, int x, int y, int z) {
-    if (map.isNotAir(x, y, z)) {
+    short currentVoxel = snapshot.get(x, y, z);
+    if (!isAir(currentVoxel)) {
       nextTileToCheck.set(x, y, z);
       nextTileToCheck.add(face.direction);
 
-      Voxel currentVoxel = map.getVoxelForPosition(x, y, z);
-      Voxel nextVoxel    = map.getVoxelForPosition(nextTileToCheck);
+      short nextVoxel    = snapshot.get(nextTileToCheck);
       //Gdx.app.log(TAG, "n="+n + " for X:" + x + " Y: " + y + " Z: " + z);
 
       if (isVoxelTransparent(currentVoxel)) {
-        if (!isVoxelTransparent(nextVoxel) || nextVoxel == null || nextVoxel.blockId != currentVoxel.blockId || !isVoxelBlockHaveOcculsion(currentVoxel)) {
+        if (!isVoxelTransparent(nextVoxel) || Voxel.blockId(nextVoxel) != Voxel.blockId(currentVoxel) || !isVoxelBlockHaveOcculsion(currentVoxel)) {
           mask[n++] = currentVoxel;
         } else {
-          mask[n++] = null;
+          mask[n++] = Voxel.AIR;
         }
       } else if (isVoxelTransparent(nextVoxel)) {
         mask[n++] = currentVoxel;
-      } else if (map.isEmptyNotOutOfBounds(nextTileToCheck) || doVoxelsDontHaveTheSameShape(currentVoxel, nextVoxel) || !isVoxelBlockHaveOcculsion(currentVoxel)) {
+      } else if (isEmptyNotOutOfBounds(nextTileToCheck, nextVoxel) || doVoxelsDontHaveTheSameShape(currentVoxel, nextVoxel) || !isVoxelBlockHaveOcculsion(currentVoxel)) {
         mask[n++] = currentVoxel;
       } else {
-        mask[n++] = null;
+        mask[n++] = Voxel.AIR;
       }
     } else {
-      mask[n++] = null;
+      mask[n++] = Voxel.AIR;
     }
     return n;
   }
 
+  private boolean isEmptyNotOutOfBounds(Vector3i position, short voxel) {
+    if (snapshot.isOutOfBounds(position)) {
+      return false;
+    } else {
+      Block block = blockFor(voxel);
+      return block == null || block.isAir();
+    }
+  }
+
   private void resetMask() {
     for (int i = 0; i < mask.length; i++) {
-      mask[i] = null;
+      mask[i] = Voxel.AIR;
     }
   }
 
@@ -254,7 +338,7 @@ public class TerrainBuilder {
       voxelDef.position.set(tempA);
       voxelDef.voxelPosition.set(part.voxelPosition.x, part.voxelPosition.y, part.voxelPosition.z);
       voxelDef.size.set(map.voxelSize);
-      voxelDef.voxel         = part.voxel;
+      voxelDef.voxel.set(part.voxel);
       voxelDef.center.set(map.voxelSize.x / 2f, map.voxelSize.y / 2f, map.voxelSize.z / 2f);
       if (part.block.transparent) {
         transparentVoxelAssembler.face(voxelDef, side,part);
@@ -264,26 +348,89 @@ public class TerrainBuilder {
     }
   }
 
-  private void buildFaceForChunkWithAssembler(Chunk chunk, VoxelsAssembler assembler, boolean haveTransparency, Block.Side face) {
-    if (!assembler.isEmpty()) {
-      VoxelFaceRenderable renderable   = new VoxelFaceRenderable();
-      renderable.primitiveType         = GL30.GL_TRIANGLES;
-
-      if (ForgE.config.generateWireframe)
-        renderable.wireframe           = assembler.wireframe();
-      renderable.triangleCount         = assembler.getTriangleCount();
-      renderable.mesh                  = assembler.mesh(MeshVertexInfo.AttributeType.Position, MeshVertexInfo.AttributeType.Normal, MeshVertexInfo.AttributeType.TextureCord, MeshVertexInfo.AttributeType.Material, MeshVertexInfo.AttributeType.TextureFullCords);
-
-      renderable.worldTransform.idt();
-      renderable.haveTransparency = haveTransparency;
-      renderable.worldTransform.translate(chunk.worldPosition);
-      renderable.direction.set(face.direction.x, face.direction.y, face.direction.z);
-      renderable.mesh.calculateBoundingBox(renderable.boundingBox);
-      renderable.boundingBox.min.add(chunk.worldPosition);
-      renderable.boundingBox.max.add(chunk.worldPosition);
-      //Gdx.app.log(TAG, "Bounding box for renderable: " + cursor.size.toString());
-      chunk.addFace(renderable);
+  private ChunkSliceGeometry buildSliceWithAssembler(VoxelsAssembler assembler) {
+    if (assembler.isEmpty()) {
+      return null;
     }
+
+    Wireframe wireframe        = ForgE.config.generateWireframe ? assembler.wireframe() : null;
+    ChunkSliceGeometry slice   = new ChunkSliceGeometry(
+      assembler.vertices(),
+      assembler.indices(),
+      assembler.getVertexCount(),
+      wireframe,
+      assembler.calculateBoundingBox(new BoundingBox()),
+      assembler.isAlignedToSides()
+    );
+    assembler.clear();
+    return slice;
+  }
+
+  /**
+   * Join geometry of all slices of face into one face geometry. Slices are joined in order, so result is the same as for
+   * meshing whole face at once
+   */
+  private void buildFaceForChunkFromSlices(ChunkGeometry geometry, int faceIndex, Block.Side face, boolean haveTransparency) {
+    int vertexCount = 0;
+    int indexCount  = 0;
+    int floatCount  = 0;
+    int pointCount  = 0;
+    boolean aligned = true;
+    for (int slice = 0; slice < ChunkMap.CHUNK_SIZE; slice++) {
+      ChunkSliceGeometry sliceGeometry = geometry.slices[ChunkSlices.geometryIndex(faceIndex, slice, haveTransparency)];
+      if (sliceGeometry != null) {
+        aligned     &= sliceGeometry.alignedToFace;
+        vertexCount += sliceGeometry.vertexCount;
+        indexCount  += sliceGeometry.indices.length;
+        floatCount  += sliceGeometry.vertices.length;
+        if (sliceGeometry.wireframe != null)
+          pointCount += sliceGeometry.wireframe.getPoints().length;
+      }
+    }
+
+    if (indexCount == 0) {
+      return;
+    }
+
+    VoxelFaceGeometry faceGeometry = new VoxelFaceGeometry();
+    faceGeometry.face              = face;
+    faceGeometry.haveTransparency  = haveTransparency;
+    faceGeometry.alignedToFace     = aligned;
+    faceGeometry.attributes        = solidVoxelAssembler.getAttributes();
+    faceGeometry.vertexCount       = vertexCount;
+    faceGeometry.triangleCount     = indexCount / 3;
+    faceGeometry.vertices          = new float[floatCount];
+    faceGeometry.indices           = new short[indexCount];
+    faceGeometry.boundingBox.inf();
+    Vector3[] points               = pointCount > 0 ? new Vector3[pointCount] : null;
+
+    int vertexOffset = 0;
+    int indexOffset  = 0;
+    int floatOffset  = 0;
+    int pointOffset  = 0;
+    for (int slice = 0; slice < ChunkMap.CHUNK_SIZE; slice++) {
+      ChunkSliceGeometry sliceGeometry = geometry.slices[ChunkSlices.geometryIndex(faceIndex, slice, haveTransparency)];
+      if (sliceGeometry != null) {
+        System.arraycopy(sliceGeometry.vertices, 0, faceGeometry.vertices, floatOffset, sliceGeometry.vertices.length);
+        for (int i = 0; i < sliceGeometry.indices.length; i++) {
+          faceGeometry.indices[indexOffset + i] = (short)((sliceGeometry.indices[i] & 0xFFFF) + vertexOffset);
+        }
+        if (points != null && sliceGeometry.wireframe != null) {
+          Vector3[] slicePoints = sliceGeometry.wireframe.getPoints();
+          System.arraycopy(slicePoints, 0, points, pointOffset, slicePoints.length);
+          pointOffset += slicePoints.length;
+        }
+        faceGeometry.boundingBox.ext(sliceGeometry.boundingBox);
+        vertexOffset += sliceGeometry.vertexCount;
+        indexOffset  += sliceGeometry.indices.length;
+        floatOffset  += sliceGeometry.vertices.length;
+      }
+    }
+
+    if (points != null)
+      faceGeometry.wireframe       = new Wireframe(points);
+
+    geometry.faces.add(faceGeometry);
   }
 
   public void dispose() {
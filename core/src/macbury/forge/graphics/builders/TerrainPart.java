@@ -20,14 +20,17 @@ public class TerrainPart implements Pool.Poolable {
   public final Vector3i voxelSize         = new Vector3i();
   public final Vector2 uvTiling          = new Vector2();
   public Block block;
-  public Voxel voxel;
+  /**
+   * Packed voxel data, see {@link Voxel#pack(byte, Block.Side)}
+   */
+  public short voxel;
 
   public Block.Side face = Block.Side.all;
 
   @Override
   public void reset() {
     block = null;
-    voxel = null;
+    voxel = Voxel.AIR;
     voxelSize.setZero();
     voxelPosition.setZero();
     currentDirection.setZero();
@@ -34,7 +34,7 @@ public class VoxelDef {
 
   private final Vector3i BACK_LEFT  = new Vector3i(Vector3i.BACK).add(Vector3i.LEFT);
   private final Vector3i BACK_RIGHT = new Vector3i(Vector3i.BACK).add(Vector3i.RIGHT);
-  public Voxel voxel;
+  public final Voxel voxel = new Voxel();
 
   public VoxelDef(VoxelMap map) {
     this.map = map;
@@ -0,0 +1,64 @@
+package macbury.forge.graphics.builders;
+
+import com.badlogic.gdx.graphics.GL30;
+import com.badlogic.gdx.graphics.Mesh;
+import com.badlogic.gdx.math.collision.BoundingBox;
+import macbury.forge.blocks.Block;
+import macbury.forge.graphics.batch.Wireframe;
+import macbury.forge.graphics.batch.renderable.VoxelFaceRenderable;
+import macbury.forge.graphics.mesh.MeshVertexInfo;
+
+/**
+ * Assembled vertices and indices for one face direction of chunk. It does not touch OpenGL, so it can be created on any thread.
+ * Faces are packed into one chunk mesh and each one renders only its own range of indices
+ */
+public class VoxelFaceGeometry {
+  public MeshVertexInfo.AttributeType[] attributes;
+  public float[] vertices;
+  public short[] indices;
+  public int vertexCount;
+  public int triangleCount;
+  public Wireframe wireframe;
+  public Block.Side face;
+  /**
+   * Position of face in packed chunk mesh, see {@link ChunkGeometry#pack()}
+   */
+  public int meshIndex;
+  public int vertexOffset;
+  public int indexOffset;
+  public int indexCount;
+  public boolean haveTransparency;
+  /**
+   * True if every triangle has normal equal to direction of face. Slanted or rotated shape parts can face other ways,
+   * so only aligned faces can be skipped when camera is behind them
+   */
+  public boolean alignedToFace;
+  /**
+   * Bounding box in chunk local space
+   */
+  public final BoundingBox boundingBox = new BoundingBox();
+
+  /**
+   * Create renderable for range of packed chunk mesh
+   */
+  public VoxelFaceRenderable toRenderable(Chunk chunk, Mesh mesh) {
+    VoxelFaceRenderable renderable   = new VoxelFaceRenderable();
+    renderable.primitiveType         = GL30.GL_TRIANGLES;
+    renderable.wireframe             = wireframe;
+    renderable.triangleCount         = triangleCount;
+    renderable.mesh                  = mesh;
+    renderable.meshPartOffset        = indexOffset;
+    renderable.meshPartSize          = indexCount;
+    renderable.vertexOffset          = vertexOffset;
+    renderable.vertexCount           = vertexCount;
+    renderable.haveTransparency      = haveTransparency;
+    renderable.alignedToDirection    = alignedToFace;
+    renderable.worldTransform.idt();
+    renderable.worldTransform.translate(chunk.worldPosition);
+    renderable.direction.set(face.direction.x, face.direction.y, face.direction.z);
+    renderable.boundingBox.set(boundingBox);
+    renderable.boundingBox.min.add(chunk.worldPosition);
+    renderable.boundingBox.max.add(chunk.worldPosition);
+    return renderable;
+  }
+}
@@ -3,6 +3,7 @@ package macbury.forge.graphics.camera;
 import com.badlogic.gdx.Gdx;
 import com.badlogic.gdx.graphics.PerspectiveCamera;
 import com.badlogic.gdx.math.Frustum;
+import com.badlogic.gdx.math.Matrix4;
 import com.badlogic.gdx.math.Vector3;
 import com.badlogic.gdx.math.collision.BoundingBox;
 import macbury.forge.graphics.frustrum.DebugFrustrum;
@@ -16,31 +17,42 @@ public class GameCamera extends PerspectiveCamera {
   private final Vector3 debugDirection;
   private final Vector3 debugPosition;
   private DebugFrustrum debugFrustrum;
-  private float oldFieldOfView;
+  private final Frustum extendedFrustum;
+  private final Matrix4 extendedInvProjectionView;
 
   public GameCamera() {
     super(BASE_FOV, Gdx.graphics.getWidth(), Gdx.graphics.getHeight());
     debugDirection = new Vector3();
     this.debugPosition = new Vector3();
     this.far           = 100;
+    this.extendedFrustum           = new Frustum();
+    this.extendedInvProjectionView = new Matrix4();
   }
 
   public void saveDebugFrustrum() {
     this.debugFrustrum = new DebugFrustrum(frustum, invProjectionView);
     this.debugDirection.set(direction);
     debugPosition.set(position);
-    restoreFov();
   }
 
-  public void extendFov() {
-    this.oldFieldOfView = this.fieldOfView;
-    this.fieldOfView    += EXTEND_FOV_BY;
-    this.update();
+  /**
+   * Frustum with field of view wider by {@link #EXTEND_FOV_BY}, computed from current view without updating camera.
+   * Camera must be updated before
+   */
+  public Frustum extendedFrustum() {
+    float aspect = viewportWidth / viewportHeight;
+    extendedInvProjectionView.setToProjection(Math.abs(near), Math.abs(far), fieldOfView + EXTEND_FOV_BY, aspect);
+    Matrix4.mul(extendedInvProjectionView.val, view.val);
+    Matrix4.inv(extendedInvProjectionView.val);
+    extendedFrustum.update(extendedInvProjectionView);
+    return extendedFrustum;
   }
 
-  public void restoreFov() {
-    this.fieldOfView = this.oldFieldOfView;
-    this.update();
+  /**
+   * Return debug frustum if have or return extended frustum, see {@link #extendedFrustum()}
+   */
+  public Frustum normalOrDebugExtendedFrustrum() {
+    return haveDebugFrustrum() ? debugFrustrum : extendedFrustum();
   }
 
   public boolean haveDebugFrustrum() {
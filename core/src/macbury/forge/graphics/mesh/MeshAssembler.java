@@ -2,181 +2,435 @@ package macbury.forge.graphics.mesh;
 
 import com.badlogic.gdx.graphics.Mesh;
 import com.badlogic.gdx.graphics.VertexAttribute;
+import com.badlogic.gdx.math.MathUtils;
 import com.badlogic.gdx.math.Vector3;
+import com.badlogic.gdx.math.collision.BoundingBox;
+import com.badlogic.gdx.utils.Array;
 import com.badlogic.gdx.utils.Disposable;
+import com.badlogic.gdx.utils.FloatArray;
+import com.badlogic.gdx.utils.NumberUtils;
 import com.badlogic.gdx.utils.Pool;
-import com.badlogic.gdx.utils.Pools;
+import com.badlogic.gdx.utils.ReflectionPool;
+import com.badlogic.gdx.utils.ShortArray;
 import macbury.forge.graphics.batch.Wireframe;
 
-import java.util.ArrayList;
+import java.util.Arrays;
 
 /**
  * Created by macbury on 30.08.14.
+ * Assembles interleaved vertices directly into reusable float and short buffers in layout passed in constructor.
+ * Vertices can be streamed with {@link #beginVertex()} and attribute setters, or built with {@link MeshVertexInfo} objects
+ * using {@link #vertex()} and {@link #triangle(MeshVertexInfo, MeshVertexInfo, MeshVertexInfo)}
+ *
+ * Packed attributes take one float of four unsigned bytes (x, y, z, w) each:
+ * PackedPosition     - position * {@link #PACKED_POSITION_SCALE} in xyz, ambient occlusion in w
+ * PackedNormal       - normal * 127 + 128 in xyz, waviness in w
+ * PackedTextureCord  - uv * {@link #PACKED_POSITION_SCALE} in xy, specular in z, transparent in w
+ * PackedTextureStart - 16 bit u in xy (low, high) and 16 bit v in zw (high, low)
+ * PackedTextureEnd   - same as above for u2 and v2
+ * Lowest bit of w is always cleared, so packed float never becomes NaN (see {@link NumberUtils#intToFloatColor(int)})
  */
 public class MeshAssembler implements Disposable {
-
-  private final static Pool<MeshVertexInfo> meshVertexPool = Pools.get(MeshVertexInfo.class);
-  private final static Pool<MeshTriangle> trianglesPool    = Pools.get(MeshTriangle.class);
-
-  protected ArrayList<MeshVertexInfo> vertexArrayList;
-  protected ArrayList<MeshTriangle> triangleArrayList;
+  private static final int NO_ATTRIBUTE = -1;
+  /**
+   * Fixed point scale of packed positions and texture cords. Packed position must be in range 0..31.875 so it fits chunk local positions
+   */
+  public static final float PACKED_POSITION_SCALE = 8f;
+  private static final float PACKED_UV_SCALE      = 65535f;
+  /**
+   * Pools are per assembler so assemblers can run on different threads
+   */
+  private final Pool<MeshVertexInfo> meshVertexPool = new ReflectionPool<MeshVertexInfo>(MeshVertexInfo.class);
+  private final Array<MeshVertexInfo> pendingVertices = new Array<MeshVertexInfo>(false, 16);
+
+  private final MeshVertexInfo.AttributeType[] attributes;
+  private final int stride;
+  private final int positionOffset;
+  private final int normalOffset;
+  private final int uvOffset;
+  private final int colorOffset;
+  private final int materialOffset;
+  private final int textureFullCordsOffset;
+  private final int packedPositionOffset;
+  private final int packedNormalOffset;
+  private final int packedUvOffset;
+  private final int packedUvStartOffset;
+  private final int packedUvEndOffset;
+
+  private final FloatArray vertices;
+  private final ShortArray indices;
+  private final Vector3 min = new Vector3();
+  private final Vector3 max = new Vector3();
+  private int vertexOffset;
   private short currentIndex = 0;
 
-  public MeshAssembler() {
-    vertexArrayList    = new ArrayList<MeshVertexInfo>();
-    triangleArrayList  = new ArrayList<MeshTriangle>();
+  public MeshAssembler(MeshVertexInfo.AttributeType... attributes) {
+    this.attributes     = attributes;
+    this.vertices       = new FloatArray(1024);
+    this.indices        = new ShortArray(1024);
+
+    int offset              = 0;
+    int positionOffset      = NO_ATTRIBUTE;
+    int normalOffset        = NO_ATTRIBUTE;
+    int uvOffset            = NO_ATTRIBUTE;
+    int colorOffset         = NO_ATTRIBUTE;
+    int materialOffset      = NO_ATTRIBUTE;
+    int textureFullCordsOffset = NO_ATTRIBUTE;
+    int packedPositionOffset   = NO_ATTRIBUTE;
+    int packedNormalOffset     = NO_ATTRIBUTE;
+    int packedUvOffset         = NO_ATTRIBUTE;
+    int packedUvStartOffset    = NO_ATTRIBUTE;
+    int packedUvEndOffset      = NO_ATTRIBUTE;
+    for (MeshVertexInfo.AttributeType attr : attributes) {
+      switch (attr) {
+        case Position:
+          positionOffset = offset;
+        break;
+        case Normal:
+          normalOffset = offset;
+        break;
+        case TextureCord:
+          uvOffset = offset;
+        break;
+        case Color:
+          colorOffset = offset;
+        break;
+        case TextureFullCords:
+          textureFullCordsOffset = offset;
+        break;
+        case Material:
+          materialOffset = offset;
+        break;
+        case PackedPosition:
+          packedPositionOffset = offset;
+        break;
+        case PackedNormal:
+          packedNormalOffset = offset;
+        break;
+        case PackedTextureCord:
+          packedUvOffset = offset;
+        break;
+        case PackedTextureStart:
+          packedUvStartOffset = offset;
+        break;
+        case PackedTextureEnd:
+          packedUvEndOffset = offset;
+        break;
+      }
+      offset += attr.floatSize();
+    }
+
+    this.stride                 = offset;
+    this.positionOffset         = positionOffset;
+    this.normalOffset           = normalOffset;
+    this.uvOffset               = uvOffset;
+    this.colorOffset            = colorOffset;
+    this.materialOffset         = materialOffset;
+    this.textureFullCordsOffset = textureFullCordsOffset;
+    this.packedPositionOffset   = packedPositionOffset;
+    this.packedNormalOffset     = packedNormalOffset;
+    this.packedUvOffset         = packedUvOffset;
+    this.packedUvStartOffset    = packedUvStartOffset;
+    this.packedUvEndOffset      = packedUvEndOffset;
+    clear();
   }
 
   public void begin() {
     clear();
   }
 
-  public MeshVertexInfo vertex(float x, float y, float z) {
-    MeshVertexInfo vert = meshVertexPool.obtain();
-    vert.index          = currentIndex;
-    currentIndex        += 1;
-    vert.set(x,y,z);
-    vertexArrayList.add(vert);
-    return vert;
+  /**
+   * Start new vertex in buffer. All attributes are zeroed and following attribute setters write to this vertex
+   * @return index of vertex
+   */
+  public short beginVertex() {
+    vertexOffset    = vertices.size;
+    float[] items   = vertices.ensureCapacity(stride);
+    Arrays.fill(items, vertexOffset, vertexOffset + stride, 0f);
+    vertices.size  += stride;
+    return currentIndex++;
   }
 
-  public MeshVertexInfo vertex(Vector3 vec) {
-    return vertex(vec.x, vec.y, vec.z);
+  public void position(float x, float y, float z) {
+    if (positionOffset != NO_ATTRIBUTE) {
+      float[] items = vertices.items;
+      items[vertexOffset + positionOffset]     = x;
+      items[vertexOffset + positionOffset + 1] = y;
+      items[vertexOffset + positionOffset + 2] = z;
+    }
+
+    if (packedPositionOffset != NO_ATTRIBUTE) {
+      pack(packedPositionOffset, 0x00FFFFFF, fixed(x) | fixed(y) << 8 | fixed(z) << 16);
+    }
+
+    if (x < min.x) min.x = x;
+    if (y < min.y) min.y = y;
+    if (z < min.z) min.z = z;
+    if (x > max.x) max.x = x;
+    if (y > max.y) max.y = y;
+    if (z > max.z) max.z = z;
   }
 
-  public MeshVertexInfo vertex() {
-    return vertex(Vector3.Zero);
+  public void normal(float x, float y, float z) {
+    if (normalOffset != NO_ATTRIBUTE) {
+      float[] items = vertices.items;
+      items[vertexOffset + normalOffset]     = x;
+      items[vertexOffset + normalOffset + 1] = y;
+      items[vertexOffset + normalOffset + 2] = z;
+    }
+
+    if (packedNormalOffset != NO_ATTRIBUTE) {
+      pack(packedNormalOffset, 0x00FFFFFF, signedUnit(x) | signedUnit(y) << 8 | signedUnit(z) << 16);
+    }
   }
 
-  public MeshTriangle triangle(MeshVertexInfo vertex1, MeshVertexInfo vertex2, MeshVertexInfo vertex3) {
-    MeshTriangle triangle = trianglesPool.obtain();
-    triangle.set(vertex1, vertex2, vertex3);
-    triangleArrayList.add(triangle);
-    return triangle;
+  public void uv(float u, float v) {
+    if (uvOffset != NO_ATTRIBUTE) {
+      vertices.items[vertexOffset + uvOffset]     = u;
+      vertices.items[vertexOffset + uvOffset + 1] = v;
+    }
+
+    if (packedUvOffset != NO_ATTRIBUTE) {
+      pack(packedUvOffset, 0x0000FFFF, fixed(u) | fixed(v) << 8);
+    }
   }
 
-  public Mesh mesh(MeshVertexInfo.AttributeType... attributtes) {
-    VertexAttribute meshAttributtes[] = new VertexAttribute[attributtes.length];
-    int vertiesArraySize = 0;
-    int cursor           = 0;
-    boolean usingPosition = false;
-    boolean usingNormal   = false;
-    boolean usingTexture  = false;
-    boolean usingColor    = false;
-    boolean usingMaterial = false;
-    boolean usingTextureFullCords = false;
-    for (MeshVertexInfo.AttributeType attr : attributtes) {
-      vertiesArraySize        += attr.size();
-      meshAttributtes[cursor] = attr.attribute();
-      cursor++;
-      switch (attr) {
-        case Position:
-          usingPosition = true;
-        break;
-        case Normal:
-          usingNormal = true;
-        break;
-        case TextureCord:
-          usingTexture = true;
-        break;
-        case Color:
-          usingColor = true;
-        break;
+  public void color(float packedColor) {
+    if (colorOffset != NO_ATTRIBUTE) {
+      vertices.items[vertexOffset + colorOffset] = packedColor;
+    }
+  }
 
-        case TextureFullCords:
-          usingTextureFullCords = true;
-          break;
+  public void material(float packedMaterial) {
+    if (materialOffset != NO_ATTRIBUTE) {
+      vertices.items[vertexOffset + materialOffset] = packedMaterial;
+    }
+  }
 
-        case Material:
-          usingMaterial = true;
-        break;
-      }
+  /**
+   * Write material to current vertex. In packed layout material components are spread over free bytes of other packed attributes
+   */
+  public void material(Material material) {
+    if (materialOffset != NO_ATTRIBUTE) {
+      material(material.toFloatBits());
     }
 
-    float verties[] = new float[this.vertexArrayList.size() * vertiesArraySize];
-    short indices[] = new short[this.triangleArrayList.size() * 3];
+    if (packedPositionOffset != NO_ATTRIBUTE) {
+      pack(packedPositionOffset, 0xFF000000, unit(material.r) << 24);
+    }
 
-    cursor = 0;
+    if (packedNormalOffset != NO_ATTRIBUTE) {
+      pack(packedNormalOffset, 0xFF000000, unit(material.a) << 24);
+    }
 
-    for (MeshTriangle triangle : this.triangleArrayList) {
-      indices[cursor++] = triangle.vert1.index;
-      indices[cursor++] = triangle.vert2.index;
-      indices[cursor++] = triangle.vert3.index;
+    if (packedUvOffset != NO_ATTRIBUTE) {
+      pack(packedUvOffset, 0xFFFF0000, unit(material.g) << 16 | unit(material.b) << 24);
     }
+  }
 
-    cursor = 0;
+  public void textureFullCords(float u, float v, float u2, float v2) {
+    if (textureFullCordsOffset != NO_ATTRIBUTE) {
+      float[] items = vertices.items;
+      items[vertexOffset + textureFullCordsOffset]     = u;
+      items[vertexOffset + textureFullCordsOffset + 1] = v;
+      items[vertexOffset + textureFullCordsOffset + 2] = u2;
+      items[vertexOffset + textureFullCordsOffset + 3] = v2;
+    }
 
-    for (MeshVertexInfo vertex : this.vertexArrayList) {
-      if (usingPosition) {
-        verties[cursor++] = vertex.position.x;
-        verties[cursor++] = vertex.position.y;
-        verties[cursor++] = vertex.position.z;
-      }
+    if (packedUvStartOffset != NO_ATTRIBUTE) {
+      pack(packedUvStartOffset, 0xFFFFFFFF, packUv(u, v));
+    }
 
-      if (usingNormal) {
-        verties[cursor++] = vertex.normal.x;
-        verties[cursor++] = vertex.normal.y;
-        verties[cursor++] = vertex.normal.z;
-      }
+    if (packedUvEndOffset != NO_ATTRIBUTE) {
+      pack(packedUvEndOffset, 0xFFFFFFFF, packUv(u2, v2));
+    }
+  }
 
-      if (usingTexture) {
-        verties[cursor++] = vertex.uv.x;
-        verties[cursor++] = vertex.uv.y;
-      }
+  /**
+   * Replace masked bits of packed attribute in current vertex
+   */
+  private void pack(int attributeOffset, int mask, int bits) {
+    float[] items = vertices.items;
+    int offset    = vertexOffset + attributeOffset;
+    int word      = NumberUtils.floatToRawIntBits(items[offset]);
+    items[offset] = NumberUtils.intToFloatColor((word & ~mask) | (bits & mask));
+  }
 
-      if (usingColor) {
-        verties[cursor++] = vertex.color();
-      }
+  private static int packUv(float u, float v) {
+    int packedU = MathUtils.clamp(Math.round(u * PACKED_UV_SCALE), 0, 0xFFFF);
+    int packedV = MathUtils.clamp(Math.round(v * PACKED_UV_SCALE), 0, 0xFFFF);
+    return (packedU & 0xFF) | (packedU >> 8) << 8 | (packedV >> 8) << 16 | (packedV & 0xFF) << 24;
+  }
 
-      if (usingMaterial) {
-        verties[cursor++] = vertex.material();
-      }
+  private static int fixed(float value) {
+    return MathUtils.clamp(Math.round(value * PACKED_POSITION_SCALE), 0, 0xFF);
+  }
 
-      if (usingTextureFullCords) {
-        verties[cursor++] = vertex.textureFullCords[0];
-        verties[cursor++] = vertex.textureFullCords[1];
-        verties[cursor++] = vertex.textureFullCords[2];
-        verties[cursor++] = vertex.textureFullCords[3];
-      }
+  private static int unit(float value) {
+    return MathUtils.clamp(Math.round(value * 255f), 0, 0xFF);
+  }
+
+  private static int signedUnit(float value) {
+    return MathUtils.clamp(Math.round(value * 127f) + 128, 0, 0xFF);
+  }
+
+  /**
+   * Read position of vertex, decoding it if layout is packed. Vertex objects are in buffer only after vertices were read
+   */
+  public Vector3 getPosition(int index, Vector3 out) {
+    float[] items = vertices.items;
+    int offset    = index * stride;
+    if (positionOffset != NO_ATTRIBUTE) {
+      offset += positionOffset;
+      return out.set(items[offset], items[offset + 1], items[offset + 2]);
+    } else if (packedPositionOffset != NO_ATTRIBUTE) {
+      int word = NumberUtils.floatToRawIntBits(items[offset + packedPositionOffset]);
+      return out.set(word & 0xFF, (word >> 8) & 0xFF, (word >> 16) & 0xFF).scl(1f / PACKED_POSITION_SCALE);
+    } else {
+      return out.setZero();
+    }
+  }
+
+  public void triangle(short index1, short index2, short index3) {
+    short[] items  = indices.ensureCapacity(3);
+    int size       = indices.size;
+    items[size]    = index1;
+    items[size+1]  = index2;
+    items[size+2]  = index3;
+    indices.size  += 3;
+  }
+
+  /**
+   * Obtain vertex object. Its slot in buffer is reserved right away, so its index is stable and it can be shared by many
+   * triangles. Attributes are copied to buffer when vertices are read, on {@link #mesh()} or {@link #vertices()}, and
+   * object is returned to pool on {@link #clear()}
+   */
+  public MeshVertexInfo vertex(float x, float y, float z) {
+    MeshVertexInfo vert = meshVertexPool.obtain();
+    vert.index          = beginVertex();
+    vert.set(x,y,z);
+    pendingVertices.add(vert);
+    return vert;
+  }
+
+  public MeshVertexInfo vertex(Vector3 vec) {
+    return vertex(vec.x, vec.y, vec.z);
+  }
+
+  public MeshVertexInfo vertex() {
+    return vertex(Vector3.Zero);
+  }
+
+  public void triangle(MeshVertexInfo vertex1, MeshVertexInfo vertex2, MeshVertexInfo vertex3) {
+    triangle(vertex1.index, vertex2.index, vertex3.index);
+  }
+
+  /**
+   * Write attributes of vertex objects into their reserved slots. Streamed vertex that was not finished yet stays current
+   */
+  private void flushPendingVertices() {
+    if (pendingVertices.size == 0) {
+      return;
+    }
+    int streamedOffset = vertexOffset;
+    for (int i = 0; i < pendingVertices.size; i++) {
+      MeshVertexInfo vertex = pendingVertices.get(i);
+      vertexOffset          = (vertex.index & 0xFFFF) * stride;
+      Arrays.fill(vertices.items, vertexOffset, vertexOffset + stride, 0f);
+      position(vertex.position.x, vertex.position.y, vertex.position.z);
+      normal(vertex.normal.x, vertex.normal.y, vertex.normal.z);
+      uv(vertex.uv.x, vertex.uv.y);
+      if (colorOffset != NO_ATTRIBUTE)
+        color(vertex.color());
+      material(vertex.material);
+      textureFullCords(vertex.textureFullCords[0], vertex.textureFullCords[1], vertex.textureFullCords[2], vertex.textureFullCords[3]);
+    }
+    vertexOffset = streamedOffset;
+  }
+
+  public static VertexAttribute[] vertexAttributes(MeshVertexInfo.AttributeType... attributtes) {
+    VertexAttribute meshAttributtes[] = new VertexAttribute[attributtes.length];
+    for (int i = 0; i < attributtes.length; i++) {
+      meshAttributtes[i] = attributtes[i].attribute();
     }
+    return meshAttributtes;
+  }
 
-    Mesh mesh = new Mesh(true, verties.length, indices.length, meshAttributtes);
-    mesh.setVertices(verties);
-    mesh.setIndices(indices);
+  public Mesh mesh() {
+    flushPendingVertices();
+    Mesh mesh = new Mesh(true, getVertexCount(), indices.size, vertexAttributes(attributes));
+    mesh.setVertices(vertices.items, 0, vertices.size);
+    mesh.setIndices(indices.items, 0, indices.size);
     mesh.setAutoBind(false);
 
     clear();
     return mesh;
   }
 
+  /**
+   * Return copy of indices of assembled triangles. Does not clear assembler
+   */
+  public short[] indices() {
+    return Arrays.copyOf(indices.items, indices.size);
+  }
+
+  /**
+   * Return copy of interleaved vertices. Does not clear assembler, so it can be called outside of OpenGL thread
+   */
+  public float[] vertices() {
+    flushPendingVertices();
+    return Arrays.copyOf(vertices.items, vertices.size);
+  }
+
+  public MeshVertexInfo.AttributeType[] getAttributes() {
+    return attributes;
+  }
+
+  /**
+   * Calculate bounding box of all assembled vertices
+   */
+  public BoundingBox calculateBoundingBox(BoundingBox out) {
+    flushPendingVertices();
+    if (vertices.size == 0) {
+      return out.inf();
+    } else {
+      return out.set(min, max);
+    }
+  }
+
   public Wireframe wireframe() {
-    return new Wireframe(triangleArrayList);
+    flushPendingVertices();
+    Vector3[] points = new Vector3[indices.size];
+    for (int i = 0; i < indices.size; i++) {
+      points[i] = getPosition(indices.items[i], new Vector3());
+    }
+    return new Wireframe(points);
   }
 
   public void end() {
     clear();
   }
 
-  private void clear() {
+  public void clear() {
     currentIndex = 0;
-
-    for(MeshVertexInfo vert : vertexArrayList)
-      meshVertexPool.free(vert);
-    for(MeshTriangle triangle : triangleArrayList)
-      trianglesPool.free(triangle);
-
-    vertexArrayList.clear();
-    triangleArrayList.clear();
+    vertexOffset = 0;
+    vertices.clear();
+    indices.clear();
+    meshVertexPool.freeAll(pendingVertices);
+    pendingVertices.clear();
+    min.set(Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY);
+    max.set(Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY);
   }
 
 
   @Override
   public void dispose() {
     clear();
+    meshVertexPool.clear();
   }
 
   public boolean isEmpty() {
-    return triangleArrayList.size() == 0;
+    return indices.size == 0;
   }
 
   public boolean haveGeometry() {
@@ -184,6 +438,10 @@ public class MeshAssembler implements Disposable {
   }
 
   public int getTriangleCount() {
-    return this.triangleArrayList.size();
+    return indices.size / 3;
+  }
+
+  public int getVertexCount() {
+    return vertices.size / stride;
   }
 }
@@ -31,7 +31,15 @@ public class MeshVertexInfo implements Pool.Poolable {
     Material(VertexAttributes.Usage.ColorPacked, 4, "a_material"),
     TextureCord(VertexAttributes.Usage.TextureCoordinates, 2, ShaderProgram.TEXCOORD_ATTRIBUTE+"0"),
     TextureFullCords(VertexAttributes.Usage.TextureCoordinates, 4, "a_textureFullCoords"),
-    Color(VertexAttributes.Usage.ColorPacked, 4, ShaderProgram.COLOR_ATTRIBUTE); // probably should be 4 not 1
+    Color(VertexAttributes.Usage.ColorPacked, 4, ShaderProgram.COLOR_ATTRIBUTE), // probably should be 4 not 1
+    /**
+     * Compact attributes, every one is four normalized unsigned bytes packed in one float. See {@link MeshAssembler} for layout
+     */
+    PackedPosition(VertexAttributes.Usage.ColorPacked, 4, ShaderProgram.POSITION_ATTRIBUTE),
+    PackedNormal(VertexAttributes.Usage.ColorPacked, 4, ShaderProgram.NORMAL_ATTRIBUTE),
+    PackedTextureCord(VertexAttributes.Usage.ColorPacked, 4, ShaderProgram.TEXCOORD_ATTRIBUTE+"0"),
+    PackedTextureStart(VertexAttributes.Usage.ColorPacked, 4, "a_uvStart"),
+    PackedTextureEnd(VertexAttributes.Usage.ColorPacked, 4, "a_uvEnd");
 
     private final int attributeSize;
     private final VertexAttribute attribute;
@@ -48,6 +56,13 @@ public class MeshVertexInfo implements Pool.Poolable {
     public VertexAttribute attribute() {
       return attribute;
     }
+
+    /**
+     * How many floats attribute takes in interleaved vertex. Packed colors take only one float
+     */
+    public int floatSize() {
+      return attribute.usage == VertexAttributes.Usage.ColorPacked ? 1 : attributeSize;
+    }
   }
 
   public MeshVertexInfo() {
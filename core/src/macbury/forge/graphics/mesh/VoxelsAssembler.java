@@ -1,12 +1,11 @@
 package macbury.forge.graphics.mesh;
 
 import com.badlogic.gdx.graphics.g2d.TextureAtlas;
-import com.badlogic.gdx.math.Matrix4;
+import com.badlogic.gdx.math.MathUtils;
 import com.badlogic.gdx.math.Vector2;
-import com.badlogic.gdx.math.Vector3;
 import macbury.forge.blocks.Block;
 import macbury.forge.blocks.BlockShapePart;
-import macbury.forge.blocks.BlockShapeTriangle;
+import macbury.forge.blocks.BlockShapePartTemplate;
 import macbury.forge.graphics.builders.TerrainPart;
 import macbury.forge.graphics.builders.VoxelDef;
 
@@ -14,82 +13,91 @@ import macbury.forge.graphics.builders.VoxelDef;
  * Created by macbury on 16.10.14.
  */
 public class VoxelsAssembler extends MeshAssembler {
-  private Matrix4 transformMat = new Matrix4();
-  private Vector3 tempVec      = new Vector3();
-  private Vector2 tempVec2     = new Vector2();
-
-  private MeshVertexInfo vertex(VoxelDef voxelDef, BlockShapePart part, int index, TextureAtlas.AtlasRegion sideRegion, TerrainPart terrainPart) {
-    MeshVertexInfo vert = this.vertex().ao(voxelDef.ao).transparent(voxelDef.block.transparent);
-
-    // Part first calculate position of vertex and rotate in the algiment path
-    transformMat.idt();
-
-    transformMat.translate(voxelDef.position.x, voxelDef.position.y, voxelDef.position.z);
-    transformMat.scl(terrainPart.voxelSize.x, terrainPart.voxelSize.y, terrainPart.voxelSize.z);
-    transformMat.translate(voxelDef.center);
-
-    if (voxelDef.voxel.alginTo != null) {
-      switch (voxelDef.block.rotation) {
-        case horizontal:
-          transformMat.rotate(voxelDef.voxel.alginTo.rotationHorizontal);
-          break;
-
-        case alignToSurface:
-          transformMat.rotate(voxelDef.voxel.alginTo.rotationAllSides);
-          break;
-      }
-    }
-
-    transformMat.translate(part.verticies.get(index));
-    transformMat.getTranslation(vert.position);
-
-    // Recalculate aligment normals too :P
-
-    transformMat.idt();
-    if (voxelDef.voxel.alginTo != null) {
-      switch(voxelDef.block.rotation) {
-        case horizontal:
-          transformMat.rotate(voxelDef.voxel.alginTo.rotationHorizontal);
-        break;
-
-        case alignToSurface:
-          transformMat.rotate(voxelDef.voxel.alginTo.rotationAllSides);
-        break;
-      }
-    }
-    
-    transformMat.translate(part.normals.get(index));
-    transformMat.getTranslation(vert.normal);
-
-    Vector2 uv = part.uvs.get(index);
-    terrainPart.getUVScaling(tempVec2);
-    tempVec2.scl(uv);
-
-    vert.uv.set(tempVec2);
-    vert.textureFullCords(sideRegion.getU(), sideRegion.getV(), sideRegion.getU2(), sideRegion.getV2());
-
-    if (part.waviness != null) {
-      vert.material.setWaviness(part.waviness[index]);
-    }
-
-    return vert;
+  private Vector2 uvScaling    = new Vector2();
+  private Material material    = new Material();
+  /**
+   * True if some emitted part has normals that are not direction of side it was emitted for
+   */
+  private boolean offAxis;
+
+  public VoxelsAssembler(MeshVertexInfo.AttributeType... attributes) {
+    super(attributes);
   }
 
+  /**
+   * Emit face of voxel using precompiled shape template. Every corner is position + size * (center + rotated vertex)
+   */
   public void face(VoxelDef voxelDef, Block.Side side, TerrainPart part) {
     BlockShapePart blockShapePart       = voxelDef.block.blockShape.get(side);
 
     if (blockShapePart != null) {
       TextureAtlas.AtlasRegion sideRegion = voxelDef.block.getRegionForSide(side);
+      BlockShapePartTemplate template     = blockShapePart.template(voxelDef.block.rotation, voxelDef.voxel.alginTo);
+      if (template.facing != side) {
+        offAxis = true;
+      }
 
-      for(BlockShapeTriangle triangle : blockShapePart.triangles) {
-        MeshVertexInfo vert1          = vertex(voxelDef, blockShapePart, triangle.index1, sideRegion, part);
-        MeshVertexInfo vert2          = vertex(voxelDef, blockShapePart, triangle.index2, sideRegion, part);
-        MeshVertexInfo vert3          = vertex(voxelDef, blockShapePart, triangle.index3, sideRegion, part);
-
-        triangle(vert1, vert2, vert3);
+      final float u  = sideRegion.getU();
+      final float v  = sideRegion.getV();
+      final float u2 = sideRegion.getU2();
+      final float v2 = sideRegion.getV2();
+
+      final float positionX = voxelDef.position.x;
+      final float positionY = voxelDef.position.y;
+      final float positionZ = voxelDef.position.z;
+      final float sizeX     = part.voxelSize.x;
+      final float sizeY     = part.voxelSize.y;
+      final float sizeZ     = part.voxelSize.z;
+      final float centerX   = voxelDef.center.x;
+      final float centerY   = voxelDef.center.y;
+      final float centerZ   = voxelDef.center.z;
+      part.getUVScaling(uvScaling);
+
+      material.reset();
+      material.setAO(MathUtils.clamp(voxelDef.ao, 0.0f, 1.0f));
+      material.setTransparent(voxelDef.block.transparent);
+
+      final float[] positions = template.positions;
+      final float[] normals   = template.normals;
+      final float[] uvs       = template.uvs;
+
+      for (int corner = 0; corner < template.cornerCount; corner++) {
+        int i3     = corner * 3;
+        int i2     = corner * 2;
+        short vert = beginVertex();
+        position(
+          positionX + sizeX * (centerX + positions[i3]),
+          positionY + sizeY * (centerY + positions[i3 + 1]),
+          positionZ + sizeZ * (centerZ + positions[i3 + 2])
+        );
+        normal(normals[i3], normals[i3 + 1], normals[i3 + 2]);
+        uv(uvScaling.x * uvs[i2], uvScaling.y * uvs[i2 + 1]);
+        textureFullCords(u, v, u2, v2);
+
+        if (template.waviness != null) {
+          material.setWaviness(template.waviness[corner]);
+        }
+        material(material);
+
+        if (corner % 3 == 2) {
+          triangle((short)(vert - 2), (short)(vert - 1), vert);
+        }
       }
     }
   }
+
+  /**
+   * Check if every triangle emitted since last {@link #clear()} faces direction of side it was emitted for
+   */
+  public boolean isAlignedToSides() {
+    return !offAxis;
+  }
+
+  @Override
+  public void clear() {
+    super.clear();
+    offAxis = false;
+  }
 /*
   public void top(VoxelDef voxelDef) {
     face(voxelDef, Block.Side.top, part);
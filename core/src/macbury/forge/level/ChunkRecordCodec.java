@@ -0,0 +1,84 @@
+package macbury.forge.level;
+
+import com.badlogic.gdx.utils.Disposable;
+import com.badlogic.gdx.utils.GdxRuntimeException;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import macbury.forge.storage.serializers.level.ChunkVoxelsCodec;
+import macbury.forge.voxel.ChunkMap;
+import macbury.forge.voxel.PalettedVoxelStorage;
+
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Turns chunk voxels into deflated chunk record of {@link LevelFile} and back. Keeps its own deflater, inflater and scratch
+ * buffers, so every thread that encodes or decodes records needs separate instance, see {@link ChunkRecordPool}.
+ * Zlib streams are reset for every record and released on dispose
+ */
+public class ChunkRecordCodec implements Disposable {
+  private final ChunkVoxelsCodec voxelsCodec = new ChunkVoxelsCodec();
+  private final Deflater deflater            = new Deflater();
+  private final Inflater inflater            = new Inflater();
+  private final Output output                = new Output(1024, -1);
+  private final Input input                  = new Input();
+  private byte[] compressed                  = new byte[1024];
+  private byte[] raw                         = new byte[ChunkMap.CHUNK_ARRAY_SIZE * 2];
+
+  /**
+   * @return deflated record or null if there is no solid voxel in storage
+   */
+  public byte[] encode(PalettedVoxelStorage voxels) {
+    if (voxels.isEmpty()) {
+      return null;
+    }
+    output.clear();
+    voxelsCodec.write(output, voxels);
+
+    deflater.reset();
+    deflater.setInput(output.getBuffer(), 0, output.position());
+    deflater.finish();
+    int length = 0;
+    while (!deflater.finished()) {
+      if (length == compressed.length) {
+        compressed = Arrays.copyOf(compressed, compressed.length * 2);
+      }
+      length += deflater.deflate(compressed, length, compressed.length - length);
+    }
+    return Arrays.copyOf(compressed, length);
+  }
+
+  /**
+   * Decode deflated record into storage
+   */
+  public void decode(byte[] record, int length, PalettedVoxelStorage voxels) {
+    try {
+      inflater.reset();
+      inflater.setInput(record, 0, length);
+      int rawLength = 0;
+      while (!inflater.finished()) {
+        if (rawLength == raw.length) {
+          raw = Arrays.copyOf(raw, raw.length * 2);
+        }
+        int inflated = inflater.inflate(raw, rawLength, raw.length - rawLength);
+        if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+          throw new GdxRuntimeException("Chunk record is truncated");
+        }
+        rawLength += inflated;
+      }
+
+      input.setBuffer(raw, 0, rawLength);
+      voxelsCodec.read(input, voxels);
+    } catch (DataFormatException e) {
+      throw new GdxRuntimeException("Could not inflate chunk record", e);
+    }
+  }
+
+  @Override
+  public void dispose() {
+    deflater.end();
+    inflater.end();
+  }
+}
@@ -0,0 +1,63 @@
+package macbury.forge.level;
+
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.Disposable;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Fork join pool that encodes and decodes chunk records of {@link LevelFile}. Every thread that touches records gets its
+ * own {@link ChunkRecordCodec} once and reuses it for all records, instead of allocating scratch buffers and zlib streams
+ * for every task. Codecs are released when pool is disposed.
+ */
+public class ChunkRecordPool extends ForkJoinPool implements Disposable {
+  /**
+   * How long dispose waits for records that are still encoded or decoded
+   */
+  private static final long SHUTDOWN_TIMEOUT_MS = 5000;
+  /**
+   * Every codec handed out, so they can be released on dispose
+   */
+  private final Array<ChunkRecordCodec> created      = new Array<ChunkRecordCodec>();
+  private final ThreadLocal<ChunkRecordCodec> codecs = new ThreadLocal<ChunkRecordCodec>() {
+    @Override
+    protected ChunkRecordCodec initialValue() {
+      ChunkRecordCodec codec = new ChunkRecordCodec();
+      synchronized (created) {
+        created.add(codec);
+      }
+      return codec;
+    }
+  };
+
+  public ChunkRecordPool() {
+    super(Runtime.getRuntime().availableProcessors());
+  }
+
+  /**
+   * @return codec of current thread
+   */
+  public ChunkRecordCodec codec() {
+    return codecs.get();
+  }
+
+  /**
+   * Shut down pool and release zlib streams of all codecs. Must be called after nothing reads or writes level files
+   */
+  @Override
+  public void dispose() {
+    shutdown();
+    try {
+      awaitTermination(SHUTDOWN_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    synchronized (created) {
+      for (ChunkRecordCodec codec : created) {
+        codec.dispose();
+      }
+      created.clear();
+    }
+  }
+}
@@ -7,6 +7,8 @@ import macbury.forge.ForgE;
 import macbury.forge.graphics.batch.VoxelBatch;
 import macbury.forge.graphics.camera.GameCamera;
 import macbury.forge.graphics.frustrum.FrustrumDebugAndRenderer;
+import macbury.forge.octree.LinearOctree;
+import macbury.forge.octree.Octree;
 import macbury.forge.octree.OctreeNode;
 import macbury.forge.systems.engine.LevelEntityEngine;
 import macbury.forge.terrain.TerrainEngine;
@@ -22,12 +24,13 @@ public class Level implements Disposable {
   public final ChunkMap                 terrainMap;
   public final LevelState               state;
   /**
-   * Dynamic octree refreshed every 100 ms
+   * Dynamic octree with entities, updated incrementally by {@link macbury.forge.systems.OctreeSystem}
    */
-  public final OctreeNode octree;
+  public final Octree dynamicOctree;
   /**
-   * Static octree refreshed only after terrain was rebuild
+   * Static octree with chunks that have geometry, changed only after terrain was rebuild by {@link TerrainEngine}
    */
+  public final Octree staticOctree;
   public final RenderContext            renderContext;
   public final FrustrumDebugAndRenderer frustrumDebugger;
   public final TerrainEngine            terrainEngine;
@@ -39,7 +42,8 @@ public class Level implements Disposable {
     this.terrainMap          = state.terrainMap;
     this.renderContext       = new RenderContext(new DefaultTextureBinder(DefaultTextureBinder.WEIGHTED, 1));
 
-    this.octree              = OctreeNode.root();
+    this.dynamicOctree       = buildOctree();
+    this.staticOctree        = buildOctree();
 
     this.batch               = new VoxelBatch(renderContext);
     this.camera              = new GameCamera();
@@ -49,10 +53,15 @@ public class Level implements Disposable {
 
     //this.psychics            = new BulletWorld(collisionConfiguration, dispatcher, sweep, solver, collisionWorld);
 
-    octree.setBounds(terrainMap.getBounds(ChunkMap.TERRAIN_TILE_SIZE));
+    dynamicOctree.setBounds(terrainMap.getBounds(ChunkMap.TERRAIN_TILE_SIZE));
+    staticOctree.setBounds(terrainMap.getBounds(ChunkMap.TERRAIN_TILE_SIZE));
 
   }
 
+  private static Octree buildOctree() {
+    return ForgE.config.linearOctree ? new LinearOctree(OctreeNode.MAX_LEVELS) : OctreeNode.root();
+  }
+
   public void resize(int width, int height) {
     camera.viewportWidth  = width;
     camera.viewportHeight = height;
@@ -67,6 +76,7 @@ public class Level implements Disposable {
     batch.begin(camera); {
       entities.update(delta);
       batch.add(terrainEngine);
+      batch.skipped(terrainEngine.skippedFaces, terrainEngine.skippedTriangles);
       batch.render(env);
     } batch.end();
   }
@@ -78,7 +88,8 @@ public class Level implements Disposable {
     batch.dispose();
     terrainMap.dispose();
     entities.dispose();
-    octree.dispose();
+    dynamicOctree.dispose();
+    staticOctree.dispose();
     frustrumDebugger.dispose();
     terrainEngine.dispose();
   }
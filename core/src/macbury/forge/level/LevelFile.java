@@ -0,0 +1,553 @@
+package macbury.forge.level;
+
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.GdxRuntimeException;
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.io.Input;
+import macbury.forge.graphics.builders.Chunk;
+import macbury.forge.storage.serializers.level.ChunkVoxelsCodec;
+import macbury.forge.storage.serializers.level.LevelStateBasicInfoSerializer;
+import macbury.forge.voxel.ChunkLoader;
+import macbury.forge.voxel.ChunkMap;
+import macbury.forge.voxel.PalettedVoxelStorage;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.RecursiveAction;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Chunk indexed, journaled level file. Layout:
+ * magic, version, offset and length of current index block, then chunk records and index blocks.
+ * Index block is header length, deflated header (see {@link LevelStateBasicInfoSerializer}),
+ * chunk count and offset table with offset and length of record for every chunk (length 0 for chunk without data).
+ * Chunk records are independently deflated and encoded with {@link ChunkVoxelsCodec}.
+ *
+ * Saving only modified chunks appends their records and new index block to the end of file and then points file at the
+ * new index, so crash in the middle of save leaves previous index valid. Replaced records stay in file as garbage until
+ * file is compacted by writing it again from scratch, see {@link #needsCompaction()}.
+ *
+ * Opening file reads only header and offset table, chunk records are paged in on demand through {@link FileChannel}.
+ * Records are independent, so they are encoded on save and decoded on bulk load in parallel on fork join pool.
+ * Version 2 files were one deflated stream, see {@link LevelManager#convert(com.badlogic.gdx.files.FileHandle)}
+ */
+public class LevelFile implements ChunkLoader {
+  public static final int MAGIC            = 0x464C564C; // FLVL
+  public static final int VERSION          = 5;
+  /**
+   * Magic, version, offset and length of index
+   */
+  private static final int FILE_HEADER     = 20;
+  private static final int INDEX_POINTER   = 8;
+  private static final int TABLE_ENTRY     = 12;
+  /**
+   * How many chunks single task encodes or decodes before it stops splitting
+   */
+  private static final int CHUNKS_PER_TASK = 8;
+  /**
+   * File is compacted when garbage takes more than this and more than live data
+   */
+  private static final long MIN_GARBAGE    = 256 * 1024;
+
+  private final File file;
+  private final ChunkRecordPool pool;
+  private RandomAccessFile randomAccessFile;
+  private FileChannel channel;
+  private byte[] header;
+  private long[] offsets;
+  private int[] lengths;
+  private byte[] compressed;
+  private ChunkMap map;
+
+  private LevelFile(File file, ChunkRecordPool pool) throws IOException {
+    this.file       = file;
+    this.pool       = pool;
+    this.compressed = new byte[1024];
+    readTable();
+  }
+
+  /**
+   * Open file reading only header and offset table
+   * @param pool used to decode chunks
+   */
+  public static LevelFile open(File file, ChunkRecordPool pool) {
+    try {
+      return new LevelFile(file, pool);
+    } catch (IOException e) {
+      throw new GdxRuntimeException("Could not open level file: " + file.getAbsolutePath(), e);
+    }
+  }
+
+  /**
+   * Check if file starts with magic of chunk indexed level file
+   */
+  public static boolean isLevelFile(File file) {
+    try {
+      DataInputStream input = new DataInputStream(new FileInputStream(file));
+      try {
+        return input.readInt() == MAGIC;
+      } finally {
+        input.close();
+      }
+    } catch (IOException e) {
+      return false;
+    }
+  }
+
+  /**
+   * Read only level header without touching offset table and chunks
+   */
+  public static LevelState readHeader(File file, Kryo kryo) {
+    try {
+      RandomAccessFile input = new RandomAccessFile(file, "r");
+      try {
+        return readState(inflate(readBytes(openIndex(input))), kryo);
+      } finally {
+        input.close();
+      }
+    } catch (IOException e) {
+      throw new GdxRuntimeException("Could not read level file: " + file.getAbsolutePath(), e);
+    }
+  }
+
+  public LevelState readState(Kryo kryo) {
+    return readState(header, kryo);
+  }
+
+  /**
+   * Mark chunks with records as not loaded and set this file as their loader. Chunks without record stay empty
+   */
+  public void attach(ChunkMap map) {
+    checkChunkCount(map);
+    this.map = map;
+    for (Chunk chunk : map.chunks) {
+      if (lengths[map.chunkIndex(chunk)] > 0) {
+        map.markUnloaded(chunk);
+      }
+    }
+    map.setChunkLoader(this);
+  }
+
+  /**
+   * Set this file as loader of map whose voxels were just written to it. Chunks stay in memory
+   */
+  public void bind(ChunkMap map) {
+    checkChunkCount(map);
+    this.map = map;
+    map.setChunkLoader(this);
+  }
+
+  private void checkChunkCount(ChunkMap map) {
+    if (map.chunks.size != offsets.length) {
+      throw new GdxRuntimeException("Level file have " + offsets.length + " chunks but map have " + map.chunks.size);
+    }
+  }
+
+  @Override
+  public void load(Chunk chunk) {
+    readVoxels(map.chunkIndex(chunk), chunk.voxels);
+  }
+
+  /**
+   * Read records of chunks one after another and decode them in parallel
+   */
+  @Override
+  public void load(Array<Chunk> chunks) {
+    byte[][] records = new byte[chunks.size][];
+    synchronized (this) {
+      for (int i = 0; i < chunks.size; i++) {
+        records[i] = copyRecord(map.chunkIndex(chunks.get(i)));
+      }
+    }
+    pool.invoke(new DecodeTask(pool, chunks, records, 0, chunks.size));
+  }
+
+  /**
+   * Decode record of chunk into storage. Storage is left untouched if chunk have no record
+   */
+  public synchronized void readVoxels(int chunkIndex, PalettedVoxelStorage voxels) {
+    int length = readRecord(chunkIndex);
+    if (length > 0) {
+      pool.codec().decode(compressed, length, voxels);
+    }
+  }
+
+  /**
+   * Copy of compressed record of chunk, used to save chunks that were not paged in
+   */
+  public synchronized byte[] copyRecord(int chunkIndex) {
+    int length = readRecord(chunkIndex);
+    if (length == 0) {
+      return null;
+    }
+    byte[] record = new byte[length];
+    System.arraycopy(compressed, 0, record, 0, length);
+    return record;
+  }
+
+  /**
+   * Read compressed record into buffer
+   * @return length of record
+   */
+  private int readRecord(int chunkIndex) {
+    int length = lengths[chunkIndex];
+    if (length == 0) {
+      return 0;
+    }
+
+    if (compressed.length < length) {
+      compressed = new byte[length];
+    }
+
+    try {
+      ByteBuffer buffer = ByteBuffer.wrap(compressed, 0, length);
+      long position     = offsets[chunkIndex];
+      while (buffer.hasRemaining()) {
+        int read = channel.read(buffer, position);
+        if (read < 0) {
+          throw new EOFException("Chunk record " + chunkIndex + " is truncated");
+        }
+        position += read;
+      }
+    } catch (IOException e) {
+      throw new GdxRuntimeException("Could not read chunk record " + chunkIndex + " from " + file.getAbsolutePath(), e);
+    }
+    return length;
+  }
+
+  /**
+   * @return true if modified chunks of map can be appended to this file when map is saved to target
+   */
+  public synchronized boolean canAppend(File target, ChunkMap map) {
+    return map.chunks.size == offsets.length && !needsCompaction() && file.getAbsoluteFile().equals(target.getAbsoluteFile());
+  }
+
+  /**
+   * @return true if replaced records take more space than live data
+   */
+  public synchronized boolean needsCompaction() {
+    long live = FILE_HEADER + header.length + (long)offsets.length * TABLE_ENTRY;
+    for (int i = 0; i < lengths.length; i++) {
+      live += lengths[i];
+    }
+    long garbage = file.length() - live;
+    return garbage > MIN_GARBAGE && garbage > live;
+  }
+
+  /**
+   * Append records of modified chunks and new index, then point file at new index. Table in memory is replaced only
+   * after index pointer is on disk
+   */
+  private synchronized void append(LevelSnapshot snapshot, byte[][] records) throws IOException {
+    long[] newOffsets       = offsets.clone();
+    int[] newLengths        = lengths.clone();
+    RandomAccessFile output = new RandomAccessFile(file, "rw");
+    try {
+      long start                  = output.length();
+      ByteArrayOutputStream block = new ByteArrayOutputStream();
+      for (int i = 0; i < newOffsets.length; i++) {
+        if (snapshot.modified[i]) {
+          newLengths[i] = records[i] == null ? 0 : records[i].length;
+          newOffsets[i] = newLengths[i] == 0 ? 0 : start + block.size();
+          if (newLengths[i] > 0) {
+            block.write(records[i]);
+          }
+        }
+      }
+
+      long indexOffset = start + block.size();
+      byte[] index     = writeIndex(deflate(snapshot.header), newOffsets, newLengths);
+      block.write(index);
+
+      output.seek(start);
+      output.write(block.toByteArray());
+      output.getFD().sync();
+      output.seek(INDEX_POINTER);
+      output.writeLong(indexOffset);
+      output.writeInt(index.length);
+      output.getFD().sync();
+    } finally {
+      output.close();
+    }
+
+    this.header  = snapshot.header;
+    this.offsets = newOffsets;
+    this.lengths = newLengths;
+  }
+
+  /**
+   * Replace file on disk with new one and page remaining chunks from it. Chunks must keep their indexes. If file could not
+   * be replaced, old file is opened again
+   */
+  private synchronized void replaceWith(File newFile) throws IOException {
+    close();
+    try {
+      move(newFile, file);
+    } catch (IOException e) {
+      readTable();
+      throw e;
+    }
+    readTable();
+  }
+
+  private void readTable() throws IOException {
+    this.randomAccessFile = new RandomAccessFile(file, "r");
+    this.channel          = randomAccessFile.getChannel();
+    DataInputStream input = openIndex(randomAccessFile);
+    this.header           = inflate(readBytes(input));
+    int chunkCount        = input.readInt();
+    this.offsets          = new long[chunkCount];
+    this.lengths          = new int[chunkCount];
+    for (int i = 0; i < chunkCount; i++) {
+      offsets[i] = input.readLong();
+      lengths[i] = input.readInt();
+    }
+  }
+
+  /**
+   * Return stream starting at index of file
+   */
+  private static DataInputStream openIndex(RandomAccessFile input) throws IOException {
+    checkMagicAndVersion(input);
+    long indexOffset = input.readLong();
+    byte[] index     = new byte[input.readInt()];
+    input.seek(indexOffset);
+    input.readFully(index);
+    return new DataInputStream(new ByteArrayInputStream(index));
+  }
+
+  private void close() throws IOException {
+    channel.close();
+    randomAccessFile.close();
+  }
+
+  public File getFile() {
+    return file;
+  }
+
+  @Override
+  public synchronized void dispose() {
+    try {
+      close();
+    } catch (IOException e) {
+      e.printStackTrace();
+    }
+  }
+
+  /**
+   * Write level snapshot. Chunk records are encoded in parallel on pool. Snapshot of modified chunks is appended to its
+   * source file. Full snapshot is written next to target and moved in place when complete, chunks that were not paged in
+   * are copied from source level file
+   */
+  public static void write(File file, LevelSnapshot snapshot, ChunkRecordPool pool) {
+    int chunkCount   = snapshot.getChunkCount();
+    byte[][] records = new byte[chunkCount][];
+    pool.invoke(new EncodeTask(pool, snapshot, records, 0, chunkCount));
+
+    try {
+      if (snapshot.incremental) {
+        snapshot.source.append(snapshot, records);
+        return;
+      }
+
+      File tempFile           = new File(file.getPath() + ".tmp");
+      RandomAccessFile output = new RandomAccessFile(tempFile, "rw");
+      try {
+        output.setLength(0);
+        output.seek(FILE_HEADER);
+        DataOutputStream stream = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(output.getChannel())));
+        long[] offsets          = new long[chunkCount];
+        int[] lengths           = new int[chunkCount];
+        long offset             = FILE_HEADER;
+        for (int i = 0; i < chunkCount; i++) {
+          lengths[i] = records[i] == null ? 0 : records[i].length;
+          offsets[i] = lengths[i] == 0 ? 0 : offset;
+          if (lengths[i] > 0) {
+            stream.write(records[i]);
+          }
+          offset += lengths[i];
+        }
+
+        byte[] index = writeIndex(deflate(snapshot.header), offsets, lengths);
+        stream.write(index);
+        stream.flush();
+
+        output.seek(0);
+        output.writeInt(MAGIC);
+        output.writeInt(VERSION);
+        output.writeLong(offset);
+        output.writeInt(index.length);
+        output.getFD().sync();
+      } finally {
+        output.close();
+      }
+
+      LevelFile source = snapshot.source;
+      if (source != null && source.getFile().getAbsoluteFile().equals(file.getAbsoluteFile())) {
+        source.replaceWith(tempFile);
+      } else {
+        move(tempFile, file);
+      }
+    } catch (IOException e) {
+      throw new GdxRuntimeException("Could not write level file: " + file.getAbsolutePath(), e);
+    }
+  }
+
+  private static byte[] writeIndex(byte[] header, long[] offsets, int[] lengths) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream(8 + header.length + offsets.length * TABLE_ENTRY);
+    DataOutputStream output     = new DataOutputStream(bytes);
+    output.writeInt(header.length);
+    output.write(header);
+    output.writeInt(offsets.length);
+    for (int i = 0; i < offsets.length; i++) {
+      output.writeLong(offsets[i]);
+      output.writeInt(lengths[i]);
+    }
+    output.flush();
+    return bytes.toByteArray();
+  }
+
+  /**
+   * Encodes range of snapshot chunks into records, splitting range in half until it is small enough
+   */
+  private static class EncodeTask extends RecursiveAction {
+    private final ChunkRecordPool pool;
+    private final LevelSnapshot snapshot;
+    private final byte[][] records;
+    private final int start;
+    private final int end;
+
+    public EncodeTask(ChunkRecordPool pool, LevelSnapshot snapshot, byte[][] records, int start, int end) {
+      this.pool     = pool;
+      this.snapshot = snapshot;
+      this.records  = records;
+      this.start    = start;
+      this.end      = end;
+    }
+
+    @Override
+    protected void compute() {
+      if (end - start > CHUNKS_PER_TASK) {
+        int middle = (start + end) >>> 1;
+        invokeAll(new EncodeTask(pool, snapshot, records, start, middle), new EncodeTask(pool, snapshot, records, middle, end));
+        return;
+      }
+
+      ChunkRecordCodec codec = pool.codec();
+      for (int i = start; i < end; i++) {
+        if (snapshot.voxels[i] != null) {
+          records[i] = codec.encode(snapshot.voxels[i]);
+        } else if (snapshot.onDisk[i]) {
+          records[i] = snapshot.source.copyRecord(i);
+        }
+      }
+    }
+  }
+
+  /**
+   * Decodes records into storages of chunks, splitting range in half until it is small enough
+   */
+  private static class DecodeTask extends RecursiveAction {
+    private final ChunkRecordPool pool;
+    private final Array<Chunk> chunks;
+    private final byte[][] records;
+    private final int start;
+    private final int end;
+
+    public DecodeTask(ChunkRecordPool pool, Array<Chunk> chunks, byte[][] records, int start, int end) {
+      this.pool    = pool;
+      this.chunks  = chunks;
+      this.records = records;
+      this.start   = start;
+      this.end     = end;
+    }
+
+    @Override
+    protected void compute() {
+      if (end - start > CHUNKS_PER_TASK) {
+        int middle = (start + end) >>> 1;
+        invokeAll(new DecodeTask(pool, chunks, records, start, middle), new DecodeTask(pool, chunks, records, middle, end));
+        return;
+      }
+
+      ChunkRecordCodec codec = pool.codec();
+      for (int i = start; i < end; i++) {
+        if (records[i] != null) {
+          codec.decode(records[i], records[i].length, chunks.get(i).voxels);
+        }
+      }
+    }
+  }
+
+  /**
+   * Atomically replace target, so after crash there is always either old or new complete file
+   */
+  private static void move(File from, File to) throws IOException {
+    Files.move(from.toPath(), to.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  private static void checkMagicAndVersion(DataInput input) throws IOException {
+    if (input.readInt() != MAGIC) {
+      throw new IOException("Not a level file");
+    }
+    int version = input.readInt();
+    if (version != VERSION) {
+      throw new IOException("Level file version is: " + version + " but current supported version is: " + VERSION);
+    }
+  }
+
+  private static byte[] readBytes(DataInput input) throws IOException {
+    byte[] bytes = new byte[input.readInt()];
+    input.readFully(bytes);
+    return bytes;
+  }
+
+  private static LevelState readState(byte[] header, Kryo kryo) {
+    Input input = new Input(header);
+    return new LevelStateBasicInfoSerializer().read(kryo, input, LevelState.class);
+  }
+
+  private static byte[] deflate(byte[] bytes) {
+    Deflater deflater = new Deflater();
+    try {
+      deflater.setInput(bytes, 0, bytes.length);
+      deflater.finish();
+      ByteArrayOutputStream output = new ByteArrayOutputStream(Math.max(64, bytes.length / 4));
+      byte[] buffer                = new byte[4096];
+      while (!deflater.finished()) {
+        int count = deflater.deflate(buffer);
+        output.write(buffer, 0, count);
+      }
+      return output.toByteArray();
+    } finally {
+      deflater.end();
+    }
+  }
+
+  private static byte[] inflate(byte[] bytes) throws IOException {
+    Inflater inflater = new Inflater();
+    try {
+      inflater.setInput(bytes);
+      ByteArrayOutputStream output = new ByteArrayOutputStream(bytes.length * 4);
+      byte[] buffer                = new byte[4096];
+      while (!inflater.finished()) {
+        int count = inflater.inflate(buffer);
+        if (count == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+          throw new EOFException("Level header is truncated");
+        }
+        output.write(buffer, 0, count);
+      }
+      return output.toByteArray();
+    } catch (DataFormatException e) {
+      throw new IOException(e);
+    } finally {
+      inflater.end();
+    }
+  }
+}
@@ -3,27 +3,36 @@ package macbury.forge.level;
 import com.badlogic.gdx.Gdx;
 import com.badlogic.gdx.files.FileHandle;
 import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.Disposable;
 import com.badlogic.gdx.utils.GdxRuntimeException;
 import com.esotericsoftware.kryo.Kryo;
 import com.esotericsoftware.kryo.io.Input;
-import com.esotericsoftware.kryo.io.Output;
+import macbury.forge.ForgE;
 import macbury.forge.storage.StorageManager;
 import macbury.forge.storage.serializers.level.FullLevelStateSerializer;
 import macbury.forge.storage.serializers.level.LevelStateBasicInfoSerializer;
+import macbury.forge.voxel.ChunkMap;
 
 import java.io.*;
 import java.util.HashMap;
-import java.util.zip.DeflaterInputStream;
-import java.util.zip.DeflaterOutputStream;
+import java.util.concurrent.CountDownLatch;
 import java.util.zip.InflaterInputStream;
 
 /**
  * Created by macbury on 09.03.15.
  */
-public class LevelManager {
+public class LevelManager implements Disposable {
   private static final String TAG = "LevelManager";
   private final StorageManager storageManager;
   private final LevelStateBasicInfoSerializer basicLevelInfoSerializer;
+  /**
+   * Encodes and decodes chunk records of level files in parallel
+   */
+  private final ChunkRecordPool serializationPool;
+  /**
+   * OpenGL thread, manager is created in {@link ForgE#create()}
+   */
+  private final Thread renderThread;
   private HashMap<Integer, FileHandle> idToPathMap;
 
   public FileFilter mapAndDirFileFilter = new FileFilter() {
@@ -37,13 +46,50 @@ public class LevelManager {
     this.storageManager = storageManager;
     this.idToPathMap    = new HashMap<Integer, FileHandle>();
     this.basicLevelInfoSerializer = new LevelStateBasicInfoSerializer();
+    this.serializationPool        = new ChunkRecordPool();
+    this.renderThread             = Thread.currentThread();
     reload();
   }
 
+  /**
+   * Open level reading only its header and chunk offsets. Chunks are paged in by terrain map when needed.
+   * Older files stored as one deflated stream are converted to chunk indexed format first
+   */
   public LevelState load(FileHandle mapFile) {
+    if (!LevelFile.isLevelFile(mapFile.file())) {
+      return convert(mapFile);
+    }
+
+    Kryo kryo             = storageManager.pool.borrow();
+    Gdx.app.log(TAG, "Opening map: " + mapFile.toString());
+    LevelFile levelFile   = LevelFile.open(mapFile.file(), serializationPool);
+    LevelState levelState = levelFile.readState(kryo);
+    storageManager.pool.release(kryo);
+
+    ChunkMap map          = ChunkMap.build();
+    map.initialize(levelState.getWidth(), levelState.getHeight(), levelState.getDepth());
+    map.splitIntoChunks();
+    levelFile.attach(map);
+    levelState.setTerrainMap(map);
+    levelState.env.windDisplacementTexture = ForgE.assets.getTexture("textures/wind_bump.jpg");
+    return levelState;
+  }
+
+  /**
+   * Load version 2 level in one pass and rewrite it as chunk indexed level file
+   */
+  public LevelState convert(FileHandle mapFile) {
+    Gdx.app.log(TAG, "Converting map to version " + LevelFile.VERSION + ": " + mapFile.toString());
+    LevelState levelState = loadVersion2(mapFile);
+    if (levelState != null) {
+      save(levelState, mapFile.file().getParent());
+    }
+    return levelState;
+  }
+
+  private LevelState loadVersion2(FileHandle mapFile) {
     Kryo kryo             = storageManager.pool.borrow();
     LevelState levelState = null;
-    Gdx.app.log(TAG, "Loading map: " + mapFile.toString());
     try {
       InflaterInputStream inflaterInputStream = new InflaterInputStream(new FileInputStream(mapFile.file()));
       Input input                             = new Input(inflaterInputStream);
@@ -56,24 +102,88 @@ public class LevelManager {
     return levelState;
   }
 
-  public void save(LevelState state, String storeDir) {
-    Kryo kryo          = storageManager.pool.borrow();
-    File file          = new File(storeDir + File.separator + LevelState.MAP_NAME_PREFIX+state.getId()+LevelState.FILE_EXT);
-    if (file.exists()) {
-      file.delete();
-    }
-    Gdx.app.log(TAG, "Saving map: " + file.getAbsolutePath());
+  /**
+   * Snapshot is taken and written file is bound to level on OpenGL thread, where level is edited and chunks are paged,
+   * chunks are encoded and written on calling thread. When level was loaded from the same file only modified chunks are
+   * appended to it, otherwise whole file is written and becomes loader of level
+   */
+  public void save(final LevelState state, String storeDir) {
+    final File file                = new File(storeDir + File.separator + LevelState.MAP_NAME_PREFIX+state.getId()+LevelState.FILE_EXT);
+    final LevelSnapshot[] snapshot = new LevelSnapshot[1];
+    runOnRenderThread(new Runnable() {
+      @Override
+      public void run() {
+        Kryo kryo = storageManager.pool.borrow();
+        try {
+          snapshot[0] = LevelSnapshot.take(state, kryo, file);
+        } finally {
+          storageManager.pool.release(kryo);
+        }
+      }
+    });
+    Gdx.app.log(TAG, (snapshot[0].incremental ? "Saving modified chunks of map: " : "Saving map: ") + file.getAbsolutePath());
+
     try {
-      synchronized (state) {
-        DeflaterOutputStream outputStream = new DeflaterOutputStream(new FileOutputStream(file, false));
-        Output output                     = new Output(outputStream);
-        kryo.writeObject(output, state, new FullLevelStateSerializer());
-        output.close();
+      LevelFile.write(file, snapshot[0], serializationPool);
+    } catch (RuntimeException e) {
+      runOnRenderThread(new Runnable() {
+        @Override
+        public void run() {
+          snapshot[0].restoreModified();
+        }
+      });
+      throw e;
+    }
+
+    if (snapshot[0].source == null || !snapshot[0].source.getFile().getAbsoluteFile().equals(file.getAbsoluteFile())) {
+      final LevelFile levelFile = LevelFile.open(file, serializationPool);
+      runOnRenderThread(new Runnable() {
+        @Override
+        public void run() {
+          levelFile.bind(state.terrainMap);
+        }
+      });
+    }
+  }
+
+  /**
+   * Run on OpenGL thread and wait until it finishes. Runs in place when called on OpenGL thread
+   */
+  private void runOnRenderThread(final Runnable runnable) {
+    if (Thread.currentThread() == renderThread) {
+      runnable.run();
+      return;
+    }
+
+    final CountDownLatch done        = new CountDownLatch(1);
+    final RuntimeException[] failure = new RuntimeException[1];
+    Gdx.app.postRunnable(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          runnable.run();
+        } catch (RuntimeException e) {
+          failure[0] = e;
+        } finally {
+          done.countDown();
+        }
+      }
+    });
+
+    boolean interrupted = false;
+    while (done.getCount() > 0) {
+      try {
+        done.await();
+      } catch (InterruptedException e) {
+        interrupted = true;
       }
-    } catch (FileNotFoundException e) {
-      e.printStackTrace();
     }
-    storageManager.pool.release(kryo);
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+    if (failure[0] != null) {
+      throw failure[0];
+    }
   }
 
   public void save(LevelState state) {
@@ -113,6 +223,11 @@ public class LevelManager {
     Kryo kryo             = storageManager.pool.borrow();
     FileHandle mapFile    = getLevelFileHandle(levelId);
     Gdx.app.log(TAG, "Loading map: " + mapFile.toString());
+    if (LevelFile.isLevelFile(mapFile.file())) {
+      levelState = LevelFile.readHeader(mapFile.file(), kryo);
+      storageManager.pool.release(kryo);
+      return levelState;
+    }
     try {
       InflaterInputStream inflaterInput       = new InflaterInputStream(new FileInputStream(mapFile.file()));
       Input input                             = new Input(inflaterInput);
@@ -149,4 +264,9 @@ public class LevelManager {
     FileHandle handle = getFileHandle(levelId);
     return handle != null && handle.exists();
   }
+
+  @Override
+  public void dispose() {
+    serializationPool.dispose();
+  }
 }
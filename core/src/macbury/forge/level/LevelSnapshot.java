@@ -0,0 +1,87 @@
+package macbury.forge.level;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.io.Output;
+import macbury.forge.graphics.builders.Chunk;
+import macbury.forge.storage.serializers.level.LevelStateBasicInfoSerializer;
+import macbury.forge.voxel.ChunkMap;
+import macbury.forge.voxel.PalettedVoxelStorage;
+
+import java.io.File;
+
+/**
+ * Copy of level taken on OpenGL thread, so it can be encoded and written by {@link LevelFile#write(File, LevelSnapshot, ChunkRecordPool)}
+ * while editing continues. Only storages of paged in chunks are copied, chunks still on disk are taken from source level file.
+ * Incremental snapshot copies only chunks modified since last save and is appended to source level file
+ */
+public class LevelSnapshot {
+  /**
+   * Serialized header, see {@link LevelStateBasicInfoSerializer}
+   */
+  public final byte[] header;
+  /**
+   * Copy of voxels for every snapshotted chunk with solid voxels, indexed by {@link ChunkMap#chunkIndex(Chunk)}
+   */
+  public final PalettedVoxelStorage[] voxels;
+  /**
+   * True for chunks which record must be taken from source
+   */
+  public final boolean[] onDisk;
+  /**
+   * True for chunks that were modified since last save
+   */
+  public final boolean[] modified;
+  public final boolean incremental;
+  public final LevelFile source;
+  private final ChunkMap map;
+
+  private LevelSnapshot(byte[] header, ChunkMap map, LevelFile source, boolean incremental) {
+    this.header      = header;
+    this.map         = map;
+    this.voxels      = new PalettedVoxelStorage[map.chunks.size];
+    this.onDisk      = new boolean[map.chunks.size];
+    this.modified    = new boolean[map.chunks.size];
+    this.source      = source;
+    this.incremental = incremental;
+  }
+
+  /**
+   * Copy level that will be saved to file. Snapshot is incremental if level was loaded from the same file and that file
+   * does not need compaction. Clears modified flags of chunks. Must be called on OpenGL thread, where level is modified
+   */
+  public static LevelSnapshot take(LevelState state, Kryo kryo, File file) {
+    ChunkMap map        = state.terrainMap;
+    Output headerOutput = new Output(256, -1);
+    new LevelStateBasicInfoSerializer().write(kryo, headerOutput, state);
+
+    LevelFile source       = map.getChunkLoader() instanceof LevelFile ? (LevelFile)map.getChunkLoader() : null;
+    boolean incremental    = source != null && source.canAppend(file, map);
+    LevelSnapshot snapshot = new LevelSnapshot(headerOutput.toBytes(), map, source, incremental);
+    for (Chunk chunk : map.chunks) {
+      int index                = map.chunkIndex(chunk);
+      snapshot.modified[index] = chunk.modified;
+      chunk.modified           = false;
+      if (!chunk.loaded) {
+        snapshot.onDisk[index] = !incremental;
+      } else if ((!incremental || snapshot.modified[index]) && map.isAnySolidVoxelsInChunk(chunk)) {
+        snapshot.voxels[index] = chunk.voxels.copy();
+      }
+    }
+    return snapshot;
+  }
+
+  /**
+   * Mark chunks from snapshot as modified again after save failed. Must be called on OpenGL thread
+   */
+  public void restoreModified() {
+    for (Chunk chunk : map.chunks) {
+      if (modified[map.chunkIndex(chunk)]) {
+        chunk.modified = true;
+      }
+    }
+  }
+
+  public int getChunkCount() {
+    return voxels.length;
+  }
+}
@@ -1,31 +1,74 @@
 package macbury.forge.level.loader;
 
 import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.math.Vector3;
+import com.badlogic.gdx.utils.Array;
 import macbury.forge.ForgE;
+import macbury.forge.graphics.builders.Chunk;
 import macbury.forge.level.LevelState;
-import macbury.forge.promises.FutureTask;
+import macbury.forge.promises.WorkerFutureTask;
+import macbury.forge.screens.GameplayScreen;
+import macbury.forge.utils.Vector3i;
+import macbury.forge.voxel.ChunkMap;
 
 /**
  * Created by macbury on 16.03.15.
+ * Opens level and pages in chunks around start position on promise workers, so OpenGL thread keeps rendering loading
+ * screen. Whole level is paged in when geometry is cached
  */
-public class AsyncLevelLoader extends FutureTask<Integer, LevelState> {
+public class AsyncLevelLoader extends WorkerFutureTask<Integer, LevelState> {
   private static final String TAG = "AsyncLevelLoader";
-  private int levelId;
-  private Runnable runnable;
+  /**
+   * Chunks paged in between checks for cancellation and progress updates
+   */
+  private static final int CHUNKS_PER_BATCH = 16;
+  /**
+   * Progress after level file is opened, rest is paging in chunks
+   */
+  private static final float OPENED_PROGRESS = 0.1f;
+  private final Vector3i startPosition;
+
+  public AsyncLevelLoader(Vector3i startPosition) {
+    super(ForgE.promises.workers);
+    this.startPosition = startPosition;
+  }
 
   @Override
-  public void execute(Integer levelId) {
-    this.levelId = levelId;
+  protected LevelState call(Integer levelId) throws Exception {
     Gdx.app.log(TAG, "Level id to load: " + levelId);
-    this.runnable = new Runnable() {
-      @Override
-      public void run() {
-        LevelState levelState = ForgE.levels.load(AsyncLevelLoader.this.levelId);
-        done(levelState);
+    LevelState state = ForgE.levels.load(levelId);
+    try {
+      setProgress(OPENED_PROGRESS);
+      pageInChunks(state.terrainMap);
+    } catch (RuntimeException e) {
+      state.terrainMap.dispose();
+      throw e;
+    }
+    return state;
+  }
+
+  private void pageInChunks(ChunkMap map) {
+    Vector3 position = new Vector3();
+    map.localVoxelPositionToWorldPosition(startPosition, position);
+    float distance   = ForgE.config.cacheGeometry ? Float.POSITIVE_INFINITY : GameplayScreen.FAR_CAMERA;
+    Array<Chunk> chunks = map.unloadedChunksAround(position, distance, new Array<Chunk>());
+    Array<Chunk> batch  = new Array<Chunk>(CHUNKS_PER_BATCH);
+    for (int start = 0; start < chunks.size && !isCancelled(); start += CHUNKS_PER_BATCH) {
+      batch.clear();
+      for (int i = start; i < Math.min(chunks.size, start + CHUNKS_PER_BATCH); i++) {
+        batch.add(chunks.get(i));
       }
-    };
-    Thread thread = new Thread(runnable);
-    thread.run();
+      map.load(batch);
+      setProgress(OPENED_PROGRESS + (1f - OPENED_PROGRESS) * (start + batch.size) / chunks.size);
+    }
   }
 
+  /**
+   * Level that is already loaded is disposed instead of passed to next task
+   */
+  @Override
+  protected void discard(LevelState result) {
+    Gdx.app.log(TAG, "Loading cancelled");
+    result.terrainMap.dispose();
+  }
 }
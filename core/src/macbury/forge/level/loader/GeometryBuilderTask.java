@@ -1,6 +1,7 @@
 package macbury.forge.level.loader;
 
 import com.badlogic.gdx.Gdx;
+import macbury.forge.ForgE;
 import macbury.forge.level.Level;
 import macbury.forge.level.LevelState;
 import macbury.forge.promises.FutureTask;
@@ -13,9 +14,9 @@ import macbury.forge.promises.Promise;
  */
 public class GeometryBuilderTask extends GdxFutureTask<LevelState, Level> {
   private static final String TAG = "GeometryBuilderTask";
-  private static final int CHUNK_TO_REBUILD_PER_TICK = 20;
   private LevelState levelState;
   private Level level;
+  private int chunksToBuild;
 
   public GeometryBuilderTask(GdxPromiseFrameTicker ticker) {
     super(ticker);
@@ -24,15 +25,38 @@ public class GeometryBuilderTask extends GdxFutureTask<LevelState, Level> {
   @Override
   public void execute(LevelState object) {
     super.execute(object);
-    this.levelState = object;
-    this.level      = new Level(levelState);
+    this.levelState    = object;
+    this.level         = new Level(levelState);
+    this.chunksToBuild = Math.max(1, levelState.terrainMap.countChunksToRebuild());
     Gdx.app.log(TAG, "Initializing level!");
   }
 
+  /**
+   * Level that was created and not passed further is disposed
+   */
+  @Override
+  protected void onCancel() {
+    super.onCancel();
+    if (level != null) {
+      level.dispose();
+      level = null;
+    }
+  }
+
+  @Override
+  protected void discard(Level result) {
+    result.dispose();
+  }
+
   @Override
   public void tick(float delta) {
-    if (level.terrainEngine.rebuild(CHUNK_TO_REBUILD_PER_TICK)) {
+    ForgE.scheduler.run(ForgE.config.loadingWorkBudgetMs);
+    if (level.terrainEngine.rebuild()) {
+      level.terrainEngine.flushGeometryCache();
       done(level);
+      level = null;
+    } else {
+      setProgress(1f - (float)levelState.terrainMap.countChunksToRebuild() / chunksToBuild);
     }
   }
 }
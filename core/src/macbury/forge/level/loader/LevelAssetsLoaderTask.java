@@ -23,7 +23,8 @@ public class LevelAssetsLoaderTask extends GdxFutureTask<Level, Level> {
 
   @Override
   public void tick(float delta) {
-    if (ForgE.assets.loadPendingInChunks()) {
+    ForgE.scheduler.run(ForgE.config.loadingWorkBudgetMs);
+    if (!ForgE.assets.hasWork()) {
       done(level);
     }
   }
@@ -0,0 +1,373 @@
+package macbury.forge.octree;
+
+import com.badlogic.gdx.math.Frustum;
+import com.badlogic.gdx.math.Plane;
+import com.badlogic.gdx.math.Vector3;
+import com.badlogic.gdx.math.collision.BoundingBox;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.ObjectIntMap;
+import macbury.forge.octree.query.FrustrumOctreeQuery;
+import macbury.forge.octree.query.OctreeQuery;
+
+import java.util.Arrays;
+
+/**
+ * Octree with fixed depth stored in flat arrays. Node of level L is stored at offset of level plus morton code of its cell,
+ * so children and parent are found with bit shifts and node of object is computed from its bounds, without probing children.
+ * Objects of node are linked list of slots, count of objects in subtree lets queries skip empty branches.
+ * Frustum queries walk tree with explicit stack and pass to children only planes that still cut parent node, objects of
+ * node that is whole inside frustum are checked with {@link FrustrumOctreeQuery#checkObjectInFrustum(OctreeObject)}
+ * Every node of every level is allocated up front, (8^(levels+1) - 1) / 7 nodes with two ints each. Depth 6 used by
+ * {@link macbury.forge.level.Level} takes about 300k nodes, 2.4 MB for each of its two trees
+ */
+public class LinearOctree implements Octree {
+  private static final int ALL_PLANES = 0x3F;
+  /**
+   * Deepest tree that still allocates reasonably, about 2.4M nodes and 19 MB. Next level would take 150 MB
+   */
+  private static final int MAX_LEVELS = 7;
+  private final int levels;
+  private final int[] levelOffset;
+  /**
+   * First slot of objects in node or -1
+   */
+  private final int[] nodeHead;
+  /**
+   * Objects in node and all its children
+   */
+  private final int[] subtreeCount;
+  private final Vector3 origin    = new Vector3();
+  private final Vector3 leafSize  = new Vector3();
+  private final BoundingBox bounds = new BoundingBox();
+  private final BoundingBox tempBox = new BoundingBox();
+
+  private final ObjectIntMap<OctreeObject> slots;
+  private OctreeObject[] slotObject;
+  private int[] slotNext;
+  private int[] slotPrev;
+  private int[] slotNode;
+  private int[] slotLevel;
+  private int usedSlots;
+  private int freeSlot;
+
+  private final int[] stackCode;
+  private final int[] stackLevelAndMask;
+  private final Array<BoundingBox> nodeBounds;
+
+  /**
+   * @param levels depth of leaf nodes, root is level 0
+   */
+  public LinearOctree(int levels) {
+    if (levels < 0 || levels > MAX_LEVELS) {
+      throw new IllegalArgumentException("Levels must be between 0 and " + MAX_LEVELS);
+    }
+    this.levels            = levels;
+    this.levelOffset       = new int[levels + 2];
+    for (int level = 1; level < levelOffset.length; level++) {
+      levelOffset[level] = levelOffset[level - 1] + (1 << (3 * (level - 1)));
+    }
+    this.nodeHead          = new int[levelOffset[levels + 1]];
+    this.subtreeCount      = new int[nodeHead.length];
+    this.slots             = new ObjectIntMap<OctreeObject>();
+    this.slotObject        = new OctreeObject[64];
+    this.slotNext          = new int[64];
+    this.slotPrev          = new int[64];
+    this.slotNode          = new int[64];
+    this.slotLevel         = new int[64];
+    this.stackCode         = new int[7 * levels + 1];
+    this.stackLevelAndMask = new int[stackCode.length];
+    this.nodeBounds        = new Array<BoundingBox>();
+    clear();
+  }
+
+  @Override
+  public void setBounds(BoundingBox box) {
+    bounds.set(box);
+    origin.set(box.min);
+    box.getDimensions(leafSize).scl(1f / (1 << levels));
+    clear();
+  }
+
+  @Override
+  public void insert(OctreeObject object) {
+    update(object);
+  }
+
+  @Override
+  public void update(OctreeObject object) {
+    object.getBoundingBox(tempBox);
+    int level = levelOf(tempBox);
+    int node  = levelOffset[level] + codeOf(tempBox, level);
+    int slot  = slots.get(object, -1);
+    if (slot == -1) {
+      slot = obtainSlot(object);
+      slots.put(object, slot);
+    } else if (slotNode[slot] == node) {
+      return;
+    } else {
+      unlink(slot);
+    }
+    link(slot, node, level);
+  }
+
+  @Override
+  public boolean remove(OctreeObject object) {
+    int slot = slots.remove(object, -1);
+    if (slot == -1) {
+      return false;
+    }
+    unlink(slot);
+    slotObject[slot] = null;
+    slotNext[slot]   = freeSlot;
+    freeSlot         = slot;
+    return true;
+  }
+
+  @Override
+  public void retrieve(Array<OctreeObject> returnObjects, OctreeQuery query) {
+    if (subtreeCount[0] == 0) {
+      return;
+    }
+    FrustrumOctreeQuery frustumQuery = query instanceof FrustrumOctreeQuery ? (FrustrumOctreeQuery) query : null;
+    Plane[] planes = frustumQuery != null ? frustumQuery.getFrustum().planes : null;
+    int top        = 0;
+    stackCode[top]         = 0;
+    stackLevelAndMask[top] = ALL_PLANES;
+    top++;
+    while (top > 0) {
+      top--;
+      int code  = stackCode[top];
+      int level = stackLevelAndMask[top] >> 6;
+      int mask  = stackLevelAndMask[top] & ALL_PLANES;
+      if (level > 0) {
+        nodeBounds(level, code, tempBox);
+        if (planes != null) {
+          if (mask != 0) {
+            mask = cull(planes, tempBox, mask);
+            if (mask < 0) {
+              continue;
+            }
+          }
+        } else if (!query.checkNode(tempBox)) {
+          continue;
+        }
+      }
+
+      boolean inside = planes != null && level > 0 && mask == 0;
+      for (int slot = nodeHead[levelOffset[level] + code]; slot != -1; slot = slotNext[slot]) {
+        OctreeObject object = slotObject[slot];
+        if (inside ? frustumQuery.checkObjectInFrustum(object) : query.checkObject(object)) {
+          returnObjects.add(object);
+        }
+      }
+
+      if (level < levels) {
+        int childOffset = levelOffset[level + 1];
+        for (int child = 0; child < 8; child++) {
+          int childCode = (code << 3) | child;
+          if (subtreeCount[childOffset + childCode] > 0) {
+            stackCode[top]         = childCode;
+            stackLevelAndMask[top] = ((level + 1) << 6) | mask;
+            top++;
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Nodes with objects that are in frustum
+   */
+  @Override
+  public void retrieveNodeBounds(Array<BoundingBox> outBounds, Frustum frustum) {
+    int used = 0;
+    for (int level = 0; level <= levels; level++) {
+      for (int node = levelOffset[level]; node < levelOffset[level + 1]; node++) {
+        if (nodeHead[node] == -1) {
+          continue;
+        }
+        if (used == nodeBounds.size) {
+          nodeBounds.add(new BoundingBox());
+        }
+        BoundingBox box = nodeBounds.get(used);
+        nodeBounds(level, node - levelOffset[level], box);
+        if (frustum.boundsInFrustum(box)) {
+          outBounds.add(box);
+          used++;
+        }
+      }
+    }
+  }
+
+  @Override
+  public void clear() {
+    Arrays.fill(nodeHead, -1);
+    Arrays.fill(subtreeCount, 0);
+    Arrays.fill(slotObject, null);
+    slots.clear();
+    usedSlots = 0;
+    freeSlot  = -1;
+  }
+
+  @Override
+  public void dispose() {
+    clear();
+  }
+
+  public int getLevels() {
+    return levels;
+  }
+
+  /**
+   * Deepest level with node that contains whole box. Boxes outside of tree bounds go to root
+   */
+  private int levelOf(BoundingBox box) {
+    if (!bounds.contains(box)) {
+      return 0;
+    }
+    int differentBits = (minCell(box.min.x, origin.x, leafSize.x) ^ maxCell(box.max.x, origin.x, leafSize.x))
+                      | (minCell(box.min.y, origin.y, leafSize.y) ^ maxCell(box.max.y, origin.y, leafSize.y))
+                      | (minCell(box.min.z, origin.z, leafSize.z) ^ maxCell(box.max.z, origin.z, leafSize.z));
+    return levels - (32 - Integer.numberOfLeadingZeros(differentBits));
+  }
+
+  private int codeOf(BoundingBox box, int level) {
+    int shift = levels - level;
+    return morton(
+        minCell(box.min.x, origin.x, leafSize.x) >> shift,
+        minCell(box.min.y, origin.y, leafSize.y) >> shift,
+        minCell(box.min.z, origin.z, leafSize.z) >> shift
+    );
+  }
+
+  private int minCell(float value, float origin, float size) {
+    int cell = (int)Math.floor((value - origin) / size);
+    return Math.max(0, Math.min(cell, (1 << levels) - 1));
+  }
+
+  /**
+   * Cell of max corner, box that ends on cell border does not reach next cell
+   */
+  private int maxCell(float value, float origin, float size) {
+    int cell = (int)Math.ceil((value - origin) / size) - 1;
+    return Math.max(0, Math.min(cell, (1 << levels) - 1));
+  }
+
+  private void nodeBounds(int level, int code, BoundingBox out) {
+    float scale = 1 << (levels - level);
+    float sizeX = leafSize.x * scale;
+    float sizeY = leafSize.y * scale;
+    float sizeZ = leafSize.z * scale;
+    float minX  = origin.x + compact(code) * sizeX;
+    float minY  = origin.y + compact(code >> 1) * sizeY;
+    float minZ  = origin.z + compact(code >> 2) * sizeZ;
+    out.min.set(minX, minY, minZ);
+    out.max.set(minX + sizeX, minY + sizeY, minZ + sizeZ);
+    out.set(out.min, out.max);
+  }
+
+  /**
+   * @return planes from mask that still cut box or -1 if box is outside of any plane
+   */
+  private static int cull(Plane[] planes, BoundingBox box, int mask) {
+    for (int i = 0; i < planes.length; i++) {
+      if ((mask & (1 << i)) == 0) {
+        continue;
+      }
+      Vector3 normal = planes[i].normal;
+      float far      = normal.x * (normal.x >= 0 ? box.max.x : box.min.x)
+                     + normal.y * (normal.y >= 0 ? box.max.y : box.min.y)
+                     + normal.z * (normal.z >= 0 ? box.max.z : box.min.z) + planes[i].d;
+      if (far < 0) {
+        return -1;
+      }
+      float near     = normal.x * (normal.x >= 0 ? box.min.x : box.max.x)
+                     + normal.y * (normal.y >= 0 ? box.min.y : box.max.y)
+                     + normal.z * (normal.z >= 0 ? box.min.z : box.max.z) + planes[i].d;
+      if (near >= 0) {
+        mask &= ~(1 << i);
+      }
+    }
+    return mask;
+  }
+
+  private void link(int slot, int node, int level) {
+    slotNode[slot]  = node;
+    slotLevel[slot] = level;
+    slotPrev[slot]  = -1;
+    slotNext[slot]  = nodeHead[node];
+    if (nodeHead[node] != -1) {
+      slotPrev[nodeHead[node]] = slot;
+    }
+    nodeHead[node]  = slot;
+    changeSubtreeCount(node, level, 1);
+  }
+
+  private void unlink(int slot) {
+    int node = slotNode[slot];
+    if (slotPrev[slot] != -1) {
+      slotNext[slotPrev[slot]] = slotNext[slot];
+    } else {
+      nodeHead[node] = slotNext[slot];
+    }
+    if (slotNext[slot] != -1) {
+      slotPrev[slotNext[slot]] = slotPrev[slot];
+    }
+    changeSubtreeCount(node, slotLevel[slot], -1);
+  }
+
+  private void changeSubtreeCount(int node, int level, int delta) {
+    int code = node - levelOffset[level];
+    while (level >= 0) {
+      subtreeCount[levelOffset[level] + code] += delta;
+      code >>= 3;
+      level--;
+    }
+  }
+
+  private int obtainSlot(OctreeObject object) {
+    int slot;
+    if (freeSlot != -1) {
+      slot     = freeSlot;
+      freeSlot = slotNext[slot];
+    } else {
+      if (usedSlots == slotObject.length) {
+        int capacity = usedSlots * 2;
+        slotObject   = Arrays.copyOf(slotObject, capacity);
+        slotNext     = Arrays.copyOf(slotNext, capacity);
+        slotPrev     = Arrays.copyOf(slotPrev, capacity);
+        slotNode     = Arrays.copyOf(slotNode, capacity);
+        slotLevel    = Arrays.copyOf(slotLevel, capacity);
+      }
+      slot = usedSlots++;
+    }
+    slotObject[slot] = object;
+    slotNode[slot]   = -1;
+    return slot;
+  }
+
+  private static int morton(int x, int y, int z) {
+    return spread(x) | (spread(y) << 1) | (spread(z) << 2);
+  }
+
+  /**
+   * Put two zero bits between each of ten lower bits
+   */
+  private static int spread(int value) {
+    value &= 0x3FF;
+    value  = (value | (value << 16)) & 0x030000FF;
+    value  = (value | (value << 8))  & 0x0300F00F;
+    value  = (value | (value << 4))  & 0x030C30C3;
+    value  = (value | (value << 2))  & 0x09249249;
+    return value;
+  }
+
+  private static int compact(int value) {
+    value &= 0x09249249;
+    value  = (value ^ (value >> 2))  & 0x030C30C3;
+    value  = (value ^ (value >> 4))  & 0x0300F00F;
+    value  = (value ^ (value >> 8))  & 0x030000FF;
+    value  = (value ^ (value >> 16)) & 0x000003FF;
+    return value;
+  }
+}
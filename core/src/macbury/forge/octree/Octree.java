@@ -0,0 +1,26 @@
+package macbury.forge.octree;
+
+import com.badlogic.gdx.math.Frustum;
+import com.badlogic.gdx.math.collision.BoundingBox;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.Disposable;
+import macbury.forge.octree.query.OctreeQuery;
+
+/**
+ * Spatial index of level, implemented by {@link OctreeNode} and {@link LinearOctree}
+ */
+public interface Octree extends Disposable {
+  public void setBounds(BoundingBox box);
+  public void insert(OctreeObject object);
+  public boolean remove(OctreeObject object);
+  /**
+   * Insert object or move it if its bounds changed
+   */
+  public void update(OctreeObject object);
+  public void retrieve(Array<OctreeObject> returnObjects, OctreeQuery query);
+  /**
+   * Bounds of nodes in frustum, used for debug rendering. Returned boxes are owned by tree
+   */
+  public void retrieveNodeBounds(Array<BoundingBox> outBounds, Frustum frustum);
+  public void clear();
+}
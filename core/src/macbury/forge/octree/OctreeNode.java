@@ -4,14 +4,13 @@ import com.badlogic.gdx.math.Frustum;
 import com.badlogic.gdx.math.Vector3;
 import com.badlogic.gdx.math.collision.BoundingBox;
 import com.badlogic.gdx.utils.Array;
-import com.badlogic.gdx.utils.Disposable;
 import com.badlogic.gdx.utils.Pool;
 import macbury.forge.octree.query.OctreeQuery;
 
 /**
  * Created by macbury on 20.10.14.
  */
-public class OctreeNode implements Pool.Poolable, Disposable {
+public class OctreeNode implements Octree, Pool.Poolable {
   public static int MAX_LEVELS  = 6;
   private int maxObjects        = 20;
 
@@ -92,6 +91,7 @@ public class OctreeNode implements Pool.Poolable, Disposable {
       return;
     } else {
       objects.add(objectToInsert);
+      objectToInsert.setOctreeParent(this);
     }
   }
 
@@ -101,6 +101,7 @@ public class OctreeNode implements Pool.Poolable, Disposable {
     }
   }
 
+  @Override
   public void insert(OctreeObject objectToInsert) {
     if (haveNodes()) {
       insertIntoProperNode(objectToInsert);
@@ -126,7 +127,16 @@ public class OctreeNode implements Pool.Poolable, Disposable {
     }
   }
 
+  /**
+   * Remove object from node it was inserted into, found by {@link OctreeObject#getOctreeParent()}
+   */
+  @Override
   public boolean remove(OctreeObject object) {
+    OctreeNode node = object.getOctreeParent();
+    if (node != null) {
+      object.setOctreeParent(null);
+      return node.objects.removeValue(object, true);
+    }
     int index = getIndex(object);
     if (index == -1) {
       return objects.removeValue(object, true);
@@ -135,6 +145,32 @@ public class OctreeNode implements Pool.Poolable, Disposable {
     }
   }
 
+  /**
+   * Insert object or move it if its bounds left node it was inserted into. Object is moved up only to first node that
+   * contains it and inserted from there, so moving object does not touch rest of tree
+   */
+  @Override
+  public void update(OctreeObject object) {
+    OctreeNode node = object.getOctreeParent();
+    if (node == null) {
+      insert(object);
+      return;
+    }
+
+    object.getBoundingBox(tempBox);
+    if (node.parent == null || node.contains(tempBox)) {
+      return;
+    }
+
+    node.objects.removeValue(object, true);
+    object.setOctreeParent(null);
+    OctreeNode target = node.parent;
+    while (target.parent != null && !target.contains(tempBox)) {
+      target = target.parent;
+    }
+    target.insert(object);
+  }
+
   public OctreeNode getNode(OctreePart part) {
     return nodes.get(part.getIndex());
   }
@@ -202,11 +238,13 @@ public class OctreeNode implements Pool.Poolable, Disposable {
     return bounds;
   }
 
+  @Override
   public void setBounds(BoundingBox box) {
     bounds.set(box);
     clear();
   }
 
+  @Override
   public void clear() {
     for (OctreeObject o : objects) {
       o.setOctreeParent(null);
@@ -269,6 +307,17 @@ public class OctreeNode implements Pool.Poolable, Disposable {
     }
   }
 
+  @Override
+  public void retrieveNodeBounds(Array<BoundingBox> outBounds, Frustum frustum) {
+    if (haveNodes()) {
+      for(OctreeNode node : nodes) {
+        node.retrieveNodeBounds(outBounds, frustum);
+      }
+    } else if (frustum.boundsInFrustum(this.getBounds())) {
+      outBounds.add(this.getBounds());
+    }
+  }
+
   public void retrieve(Array<OctreeObject> returnObjects, Frustum frustum, boolean checkObjectsToo) {
     if (haveNodes()) {
       for(OctreeNode node : nodes) {
@@ -328,10 +377,11 @@ public class OctreeNode implements Pool.Poolable, Disposable {
     this.maxObjects = maxObjects;
   }
 
+  @Override
   public void retrieve(Array<OctreeObject> returnObjects, OctreeQuery query) {
     if (haveNodes()) {
       for(OctreeNode node : nodes) {
-        if (query.checkNode(node)) {
+        if (query.checkNode(node.getBounds())) {
           node.retrieve(returnObjects, query);
         }
       }
@@ -8,4 +8,5 @@ import com.badlogic.gdx.math.collision.BoundingBox;
 public interface OctreeObject {
   public void getBoundingBox(BoundingBox outBox);
   public void setOctreeParent(OctreeNode parent);
+  public OctreeNode getOctreeParent();
 }
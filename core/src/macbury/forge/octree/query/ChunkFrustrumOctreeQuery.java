@@ -0,0 +1,20 @@
+package macbury.forge.octree.query;
+
+import macbury.forge.graphics.builders.Chunk;
+import macbury.forge.octree.OctreeObject;
+
+/**
+ * Query for static octree that holds only chunks, checks bounding box of chunk without copying it
+ */
+public class ChunkFrustrumOctreeQuery extends FrustrumOctreeQuery {
+  @Override
+  public boolean checkObject(OctreeObject object) {
+    Chunk chunk = (Chunk)object;
+    return chunk.renderables.size > 0 && getFrustum().boundsInFrustum(chunk.boundingBox);
+  }
+
+  @Override
+  public boolean checkObjectInFrustum(OctreeObject object) {
+    return ((Chunk)object).renderables.size > 0;
+  }
+}
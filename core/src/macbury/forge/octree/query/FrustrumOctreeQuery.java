@@ -2,7 +2,6 @@ package macbury.forge.octree.query;
 
 import com.badlogic.gdx.math.Frustum;
 import com.badlogic.gdx.math.collision.BoundingBox;
-import macbury.forge.octree.OctreeNode;
 import macbury.forge.octree.OctreeObject;
 
 /**
@@ -13,8 +12,8 @@ public class FrustrumOctreeQuery extends OctreeQuery {
   private BoundingBox tempBox = new BoundingBox();
 
   @Override
-  public boolean checkNode(OctreeNode node) {
-    return frustum.boundsInFrustum(node.getBounds());
+  public boolean checkNode(BoundingBox bounds) {
+    return frustum.boundsInFrustum(bounds);
   }
 
   @Override
@@ -23,6 +22,13 @@ public class FrustrumOctreeQuery extends OctreeQuery {
     return (frustum.boundsInFrustum(tempBox));
   }
 
+  /**
+   * Check object from node that is whole inside frustum, so only conditions other than frustum are left
+   */
+  public boolean checkObjectInFrustum(OctreeObject object) {
+    return true;
+  }
+
   public Frustum getFrustum() {
     return frustum;
   }
@@ -1,12 +1,15 @@
 package macbury.forge.octree.query;
 
-import macbury.forge.octree.OctreeNode;
+import com.badlogic.gdx.math.collision.BoundingBox;
 import macbury.forge.octree.OctreeObject;
 
 /**
  * Created by macbury on 29.10.14.
  */
 public abstract class OctreeQuery {
-  public abstract boolean checkNode(OctreeNode node);
+  /**
+   * @param bounds bounds of node, object inside node is checked only if this returns true
+   */
+  public abstract boolean checkNode(BoundingBox bounds);
   public abstract boolean checkObject(OctreeObject object);
 }
@@ -0,0 +1,21 @@
+package macbury.forge.octree.query;
+
+import macbury.forge.components.PositionComponent;
+import macbury.forge.octree.OctreeObject;
+
+/**
+ * Query for dynamic octree that holds only entities, checks box of position without building bounding box
+ */
+public class PositionFrustrumOctreeQuery extends FrustrumOctreeQuery {
+  @Override
+  public boolean checkObject(OctreeObject object) {
+    PositionComponent position = (PositionComponent)object;
+    float halfWidth            = position.size.x * 0.5f;
+    float halfHeight           = position.size.y * 0.5f;
+    float halfDepth            = position.size.z * 0.5f;
+    return getFrustum().boundsInFrustum(
+        position.vector.x + halfWidth, position.vector.y + halfHeight, position.vector.z + halfDepth,
+        halfWidth, halfHeight, halfDepth
+    );
+  }
+}
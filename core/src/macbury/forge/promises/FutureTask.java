@@ -1,47 +1,74 @@
 package macbury.forge.promises;
 
 import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.utils.Array;
 
 /**
  * Created by macbury on 16.03.15.
  * K - input
  * V - result
+ * Result and errors are always delivered on OpenGL thread. Task can have many continuations, every one of them gets the same
+ * result. Cancelling task cancels all tasks waiting for its result
  */
 public abstract class FutureTask<K, V> {
-  private Promise<V> promise;
+  private final Array<Promise<V>> promises;
+  private final Array<FutureTask<V, ?>> nextTasks;
+  private volatile boolean cancelled;
+  private volatile float progress;
 
   public FutureTask() {
-
+    this.promises  = new Array<Promise<V>>(1);
+    this.nextTasks = new Array<FutureTask<V, ?>>(1);
   }
 
   public abstract void execute(K object);
 
+  /**
+   * Pass result to continuations on OpenGL thread. Cancellation is checked there, so result of task cancelled before it
+   * was delivered always ends in {@link #discard(Object)}
+   */
   protected void done(final V result) {
-    Gdx.app.log(getClass().getSimpleName(), "Done");
     Gdx.app.postRunnable(new Runnable() {
       @Override
       public void run() {
-        if (promise != null) {
-          promise.success(result);
+        if (cancelled) {
+          discard(result);
+          return;
+        }
+        progress = 1f;
+        Gdx.app.log(FutureTask.this.getClass().getSimpleName(), "Done");
+        for (int i = 0; i < promises.size && !cancelled; i++) {
+          promises.get(i).success(result);
         }
       }
     });
   }
 
+  /**
+   * Release result that will not be delivered because task was cancelled. Called on OpenGL thread
+   */
+  protected void discard(V result) {
+
+  }
+
   protected void reject(final Exception e) {
+    if (cancelled) {
+      return;
+    }
     Gdx.app.log(getClass().getSimpleName(), "Error:" + e.toString());
     Gdx.app.postRunnable(new Runnable() {
       @Override
       public void run() {
-        if (promise != null) {
-          promise.error(e);
+        for (int i = 0; i < promises.size && !cancelled; i++) {
+          promises.get(i).error(e);
         }
       }
     });
   }
 
-  public FutureTask<V, ?> then(final FutureTask<V, ?> otherTask) {
-    promise = new Promise<V>() {
+  public <T> FutureTask<V, T> then(final FutureTask<V, T> otherTask) {
+    nextTasks.add(otherTask);
+    promises.add(new Promise<V>() {
       @Override
       public void success(V result) {
         otherTask.execute(result);
@@ -51,12 +78,48 @@ public abstract class FutureTask<K, V> {
       public void error(Exception reason) {
         otherTask.reject(reason);
       }
-    };
+    });
     return otherTask;
   }
 
-  public FutureTask then(Promise promise) {
-    this.promise = promise;
+  public FutureTask<K, V> then(Promise<V> promise) {
+    promises.add(promise);
     return this;
   }
+
+  /**
+   * Stop task and all tasks waiting for its result, their results are dropped. Must be called on OpenGL thread
+   */
+  public void cancel() {
+    if (cancelled) {
+      return;
+    }
+    cancelled = true;
+    onCancel();
+    for (int i = 0; i < nextTasks.size; i++) {
+      nextTasks.get(i).cancel();
+    }
+  }
+
+  /**
+   * Release work started by {@link #execute(Object)}
+   */
+  protected void onCancel() {
+
+  }
+
+  public boolean isCancelled() {
+    return cancelled;
+  }
+
+  /**
+   * @return from 0 to 1
+   */
+  public float getProgress() {
+    return progress;
+  }
+
+  protected void setProgress(float progress) {
+    this.progress = progress;
+  }
 }
@@ -2,6 +2,7 @@ package macbury.forge.promises;
 
 /**
  * Created by macbury on 16.03.15.
+ * Task that runs on OpenGL thread and is ticked every frame by {@link GdxPromiseFrameTicker} until it is done
  */
 public abstract class GdxFutureTask<K,V> extends FutureTask<K,V> {
   private final GdxPromiseFrameTicker ticker;
@@ -13,19 +14,26 @@ public abstract class GdxFutureTask<K,V> extends FutureTask<K,V> {
 
   @Override
   public void execute(K object) {
-    this.ticker.setTarget(this);
+    if (!isCancelled()) {
+      this.ticker.add(this);
+    }
   }
 
   @Override
   protected void done(V result) {
     super.done(result);
-    this.ticker.setTarget(null);
+    this.ticker.remove(this);
   }
 
   @Override
   protected void reject(Exception e) {
     super.reject(e);
-    this.ticker.setTarget(null);
+    this.ticker.remove(this);
+  }
+
+  @Override
+  protected void onCancel() {
+    this.ticker.remove(this);
   }
 
   public abstract void tick(float delta);
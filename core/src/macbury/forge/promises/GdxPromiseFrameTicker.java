@@ -1,29 +1,41 @@
 package macbury.forge.promises;
 
 import com.badlogic.gdx.utils.Disposable;
+import com.badlogic.gdx.utils.SnapshotArray;
 
 /**
  * Created by macbury on 16.03.15.
+ * Ticks all running {@link GdxFutureTask} on OpenGL thread. Tasks can finish and start other tasks while being ticked
  */
 public class GdxPromiseFrameTicker implements Disposable {
-  private GdxFutureTask target;
+  private final SnapshotArray<GdxFutureTask> targets = new SnapshotArray<GdxFutureTask>(false, 4, GdxFutureTask.class);
 
-  public void setTarget(GdxFutureTask target) {
-    this.target = target;
+  public void add(GdxFutureTask target) {
+    if (!targets.contains(target, true)) {
+      targets.add(target);
+    }
+  }
+
+  public void remove(GdxFutureTask target) {
+    targets.removeValue(target, true);
   }
 
-  public GdxFutureTask getTarget() {
-    return target;
+  public int size() {
+    return targets.size;
   }
 
   public void update(float delta) {
-    if (target != null) {
-      target.tick(delta);
+    GdxFutureTask[] items = targets.begin();
+    for (int i = 0, n = targets.size; i < n; i++) {
+      if (targets.contains(items[i], true)) {
+        items[i].tick(delta);
+      }
     }
+    targets.end();
   }
 
   @Override
   public void dispose() {
-    target = null;
+    targets.clear();
   }
 }
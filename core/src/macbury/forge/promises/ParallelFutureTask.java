@@ -0,0 +1,103 @@
+package macbury.forge.promises;
+
+import com.badlogic.gdx.utils.Array;
+
+/**
+ * Fan out and join. Executes all tasks with the same input and passes their results, in order of tasks, when every one of
+ * them is done. First error rejects this task and cancels the rest, cancelling this task cancels all of them. Results of
+ * tasks that finished before error or cancellation are passed to {@link #discard(Object)}, with null for tasks that did not
+ */
+public class ParallelFutureTask<K, V> extends FutureTask<K, Array<V>> {
+  private final Array<FutureTask<K, V>> tasks;
+  private final Array<V> results;
+  private int pending;
+
+  public ParallelFutureTask(Array<? extends FutureTask<K, V>> tasks) {
+    super();
+    this.tasks   = new Array<FutureTask<K, V>>(tasks);
+    this.results = new Array<V>(tasks.size);
+    for (int i = 0; i < this.tasks.size; i++) {
+      final int index = i;
+      this.tasks.get(i).then(new Promise<V>() {
+        @Override
+        public void success(V result) {
+          onTaskDone(index, result);
+        }
+
+        @Override
+        public void error(Exception reason) {
+          onTaskError(reason);
+        }
+      });
+    }
+  }
+
+  @Override
+  public void execute(K object) {
+    if (isCancelled()) {
+      return;
+    }
+    results.clear();
+    for (int i = 0; i < tasks.size; i++) {
+      results.add(null);
+    }
+    pending = tasks.size;
+    if (pending == 0) {
+      done(results);
+      return;
+    }
+    for (int i = 0; i < tasks.size; i++) {
+      tasks.get(i).execute(object);
+    }
+  }
+
+  private void onTaskDone(int index, V result) {
+    results.set(index, result);
+    pending--;
+    if (pending == 0) {
+      done(results);
+    } else {
+      setProgress(1f - (float)pending / tasks.size);
+    }
+  }
+
+  private void onTaskError(Exception reason) {
+    if (pending <= 0) {
+      return;
+    }
+    pending = 0;
+    cancelTasks();
+    discard(results);
+    reject(reason);
+  }
+
+  /**
+   * Average progress of all tasks
+   */
+  @Override
+  public float getProgress() {
+    if (tasks.size == 0) {
+      return super.getProgress();
+    }
+    float progress = 0;
+    for (int i = 0; i < tasks.size; i++) {
+      progress += tasks.get(i).getProgress();
+    }
+    return progress / tasks.size;
+  }
+
+  @Override
+  protected void onCancel() {
+    cancelTasks();
+    if (pending > 0) {
+      pending = 0;
+      discard(results);
+    }
+  }
+
+  private void cancelTasks() {
+    for (int i = 0; i < tasks.size; i++) {
+      tasks.get(i).cancel();
+    }
+  }
+}
@@ -1,13 +1,45 @@
 package macbury.forge.promises;
 
+import com.badlogic.gdx.utils.Disposable;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
 /**
  * Created by macbury on 16.03.15.
+ * Runs tasks of promise pipelines. {@link GdxFutureTask} are ticked on OpenGL thread by {@link #ticker},
+ * {@link WorkerFutureTask} run on {@link #workers}
  */
-public class PromiseManager {
-  private FutureTask rootTask;
+public class PromiseManager implements Disposable {
+  private static final String TAG = "PromiseManager";
+  public final GdxPromiseFrameTicker ticker;
+  public final ExecutorService workers;
 
   public PromiseManager() {
+    this.ticker  = new GdxPromiseFrameTicker();
+    this.workers = Executors.newFixedThreadPool(Math.max(1, Runtime.getRuntime().availableProcessors() - 1), new ThreadFactory() {
+      private int count = 0;
+      @Override
+      public Thread newThread(Runnable runnable) {
+        Thread thread = new Thread(runnable, TAG + "-" + (count++));
+        thread.setDaemon(true);
+        thread.setPriority(Thread.NORM_PRIORITY - 1);
+        return thread;
+      }
+    });
+  }
 
+  /**
+   * Tick tasks that run on OpenGL thread. Called every frame
+   */
+  public void update(float delta) {
+    ticker.update(delta);
   }
 
+  @Override
+  public void dispose() {
+    workers.shutdownNow();
+    ticker.dispose();
+  }
 }
@@ -0,0 +1,54 @@
+package macbury.forge.promises;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Task that runs {@link #call(Object)} on worker pool, usually {@link PromiseManager#workers}. Result is delivered on OpenGL thread
+ */
+public abstract class WorkerFutureTask<K, V> extends FutureTask<K, V> {
+  private final ExecutorService executor;
+  private Future<?> future;
+
+  public WorkerFutureTask(ExecutorService executor) {
+    super();
+    this.executor = executor;
+  }
+
+  @Override
+  public void execute(final K object) {
+    if (isCancelled()) {
+      return;
+    }
+    try {
+      this.future = executor.submit(new Runnable() {
+        @Override
+        public void run() {
+          if (isCancelled()) {
+            return;
+          }
+          try {
+            done(call(object));
+          } catch (Exception e) {
+            reject(e);
+          }
+        }
+      });
+    } catch (RejectedExecutionException e) {
+      reject(e);
+    }
+  }
+
+  /**
+   * Work done on worker thread. Long running work should check {@link #isCancelled()} and report {@link #setProgress(float)}
+   */
+  protected abstract V call(K object) throws Exception;
+
+  @Override
+  protected void onCancel() {
+    if (future != null) {
+      future.cancel(false);
+    }
+  }
+}
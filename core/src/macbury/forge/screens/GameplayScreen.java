@@ -14,7 +14,7 @@ import macbury.forge.level.Level;
  * Created by macbury on 16.03.15.
  */
 public class GameplayScreen extends AbstractScreen {
-  private static final float FAR_CAMERA = 60;
+  public static final float FAR_CAMERA = 60;
   private static final float NEAR_CAMERA = 0.01f;
   private final Level level;
   private final Teleport teleport;
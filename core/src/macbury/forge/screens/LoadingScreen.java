@@ -18,7 +18,6 @@ import macbury.forge.level.Level;
 import macbury.forge.level.loader.GeometryBuilderTask;
 import macbury.forge.level.loader.LevelAssetsLoaderTask;
 import macbury.forge.promises.FutureTask;
-import macbury.forge.promises.GdxPromiseFrameTicker;
 import macbury.forge.promises.Promise;
 
 /**
@@ -28,10 +27,14 @@ public class LoadingScreen extends AbstractScreen implements Promise<Level> {
   private static final String TAG = "LoadingScreen";
   private static final float ROTATION_SPEED = 80f;
   private static final float STANDARD_CUBE_ROTATION = 60F;
+  private static final float PROGRESS_BAR_HEIGHT = 4f;
   private Teleport teleport;
   private PerspectiveCamera camera;
+  private OrthographicCamera progressCamera;
+  private AsyncLevelLoader loader;
   private Level level;
-  private GdxPromiseFrameTicker promiseTicker;
+  private GeometryBuilderTask geometryBuilderTask;
+  private LevelAssetsLoaderTask assetsLoaderTask;
   private FPSLogger fpsLogger;
   private ShapeRenderer shapeRenderer;
   private Matrix4 boxTransMat;
@@ -48,19 +51,20 @@ public class LoadingScreen extends AbstractScreen implements Promise<Level> {
 
   @Override
   protected void initialize() {
-    this.shapeRenderer = new ShapeRenderer();
-    this.camera        = new PerspectiveCamera(67, Gdx.graphics.getWidth(), Gdx.graphics.getHeight());
-    this.fpsLogger     = new FPSLogger();
-    this.promiseTicker = new GdxPromiseFrameTicker();
-    this.boxTransMat   = new Matrix4();
+    this.shapeRenderer  = new ShapeRenderer();
+    this.camera         = new PerspectiveCamera(67, Gdx.graphics.getWidth(), Gdx.graphics.getHeight());
+    this.progressCamera = new OrthographicCamera();
+    this.fpsLogger      = new FPSLogger();
+    this.boxTransMat    = new Matrix4();
 
     camera.position.set(0, 8, 0);
     camera.lookAt(Vector3.Zero);
+    progressCamera.setToOrtho(false, Gdx.graphics.getWidth(), Gdx.graphics.getHeight());
     Gdx.app.log(TAG, "Preparing to load: " + teleport.mapId);
-    AsyncLevelLoader loader                 = new AsyncLevelLoader();
-    GeometryBuilderTask geometryBuilderTask = new GeometryBuilderTask(promiseTicker);
-    loader.then(geometryBuilderTask);
-    geometryBuilderTask.then(new LevelAssetsLoaderTask(promiseTicker)).then(this);
+    this.loader              = new AsyncLevelLoader(teleport.voxelPosition);
+    this.geometryBuilderTask = new GeometryBuilderTask(ForgE.promises.ticker);
+    this.assetsLoaderTask    = new LevelAssetsLoaderTask(ForgE.promises.ticker);
+    loader.then(geometryBuilderTask).then(assetsLoaderTask).then(this);
     loader.execute(teleport.mapId);
 
     this.indicatorRotation = 0f;
@@ -69,7 +73,6 @@ public class LoadingScreen extends AbstractScreen implements Promise<Level> {
   @Override
   public void render(float delta) {
     ForgE.graphics.clearAll(Color.BLACK);
-    promiseTicker.update(delta);
     fpsLogger.log();
 
     indicatorRotation += ROTATION_SPEED * delta;
@@ -81,11 +84,25 @@ public class LoadingScreen extends AbstractScreen implements Promise<Level> {
       shapeRenderer.rotate(0,0,1, indicatorRotation);
       shapeRenderer.box(-0.5f,-0.5f,-0.5f, 1, 1, 1);
     }shapeRenderer.end();
+
+    shapeRenderer.begin(ShapeRenderer.ShapeType.Filled); {
+      shapeRenderer.setProjectionMatrix(progressCamera.combined);
+      shapeRenderer.identity();
+      shapeRenderer.setColor(Color.DARK_GRAY);
+      shapeRenderer.rect(0, 0, progressCamera.viewportWidth, PROGRESS_BAR_HEIGHT);
+      shapeRenderer.setColor(Color.WHITE);
+      shapeRenderer.rect(0, 0, progressCamera.viewportWidth * getProgress(), PROGRESS_BAR_HEIGHT);
+    }shapeRenderer.end();
+  }
+
+  private float getProgress() {
+    return (loader.getProgress() + geometryBuilderTask.getProgress() + assetsLoaderTask.getProgress()) / 3f;
   }
 
   @Override
   public void resize(int width, int height) {
     camera.update();
+    progressCamera.setToOrtho(false, width, height);
   }
 
   @Override
@@ -110,6 +127,10 @@ public class LoadingScreen extends AbstractScreen implements Promise<Level> {
 
   @Override
   public void dispose() {
+    if (level == null) {
+      loader.cancel();
+    }
+    shapeRenderer.dispose();
     level    = null;
     teleport = null;
   }
@@ -117,13 +138,14 @@ public class LoadingScreen extends AbstractScreen implements Promise<Level> {
   @Override
   public void success(Level loadedLevel) {
     Gdx.app.log(TAG, "Done all promises!");
+    this.level = loadedLevel;
     GameplayScreen screen = new GameplayScreen(teleport, loadedLevel);
     ForgE.screens.set(screen);
   }
 
   @Override
   public void error(Exception reason) {
-
+    Gdx.app.error(TAG, "Could not load level: " + teleport.mapId, reason);
   }
 
 }
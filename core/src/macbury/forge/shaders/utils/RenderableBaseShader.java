@@ -37,7 +37,11 @@ public abstract class RenderableBaseShader<T extends BaseRenderable> extends Bas
   }
 
   protected void renderWithCurrentMesh(final T renderable) {
-    currentMesh.render(shader, renderable.primitiveType, 0, currentMesh.getMaxIndices() > 0 ? currentMesh.getMaxIndices() : currentMesh.getMaxVertices(), false);
+    if (renderable.meshPartSize > 0) {
+      currentMesh.render(shader, renderable.primitiveType, renderable.meshPartOffset, renderable.meshPartSize, false);
+    } else {
+      currentMesh.render(shader, renderable.primitiveType, 0, currentMesh.getMaxIndices() > 0 ? currentMesh.getMaxIndices() : currentMesh.getMaxVertices(), false);
+    }
   }
 
   @Override
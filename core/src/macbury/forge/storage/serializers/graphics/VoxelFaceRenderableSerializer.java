@@ -1,18 +1,34 @@
 package macbury.forge.storage.serializers.graphics;
 
+import com.badlogic.gdx.graphics.Mesh;
+import com.badlogic.gdx.graphics.VertexAttribute;
+import com.badlogic.gdx.graphics.VertexAttributes;
+import com.badlogic.gdx.math.Matrix4;
+import com.badlogic.gdx.math.Vector3;
+import com.badlogic.gdx.math.collision.BoundingBox;
 import com.esotericsoftware.kryo.Kryo;
 import com.esotericsoftware.kryo.Serializer;
 import com.esotericsoftware.kryo.io.Input;
 import com.esotericsoftware.kryo.io.Output;
 import macbury.forge.graphics.batch.renderable.VoxelFaceRenderable;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.nio.FloatBuffer;
 import java.nio.ShortBuffer;
 
 /**
  * Created by macbury on 21.03.15.
+ * Face is written with its own range of vertices and indices rebased to 0, so read face gets its own mesh that must be
+ * disposed by caller. Vertex and index data is moved in bulk through scratch byte buffer instead of one value at time and
+ * it is stored little endian, same as mesh buffers on common platforms, so copy does not need to swap bytes.
+ * One serializer instance must be used by one thread at time, like Kryo that owns it
  */
 public class VoxelFaceRenderableSerializer extends Serializer<VoxelFaceRenderable> {
+  private ByteBuffer scratch  = ByteBuffer.allocate(64 * 1024).order(ByteOrder.LITTLE_ENDIAN);
+  private float[] vertices    = new float[1024];
+  private short[] indices     = new short[1024];
+
   @Override
   public void write(Kryo kryo, Output output, VoxelFaceRenderable face) {
     kryo.writeObject(output, face.direction);
@@ -24,30 +40,101 @@ public class VoxelFaceRenderableSerializer extends Serializer<VoxelFaceRenderabl
     output.writeInt(face.triangleCount);
     kryo.writeObject(output, face.worldTransform);
 
-    int max              = face.mesh.getNumVertices() * face.mesh.getVertexSize() / 4;
-    FloatBuffer vertBuff = face.mesh.getVerticesBuffer();
-    output.writeInt(max);
-    int oldPosition      = vertBuff.position();
-    for (int pos = 0; pos < max; pos++) {
-      vertBuff.position(pos);
-      output.writeFloat(vertBuff.get());
-    }
-    vertBuff.position(oldPosition);
-
-    ShortBuffer indiBuff = face.mesh.getIndicesBuffer();
-    oldPosition          = indiBuff.position();
-    output.writeInt(face.mesh.getNumIndices());
-    for (int pos = 0; pos < face.mesh.getNumIndices(); pos++) {
-      indiBuff.position(pos);
-      output.writeShort(indiBuff.get());
+    VertexAttributes attributes = face.mesh.getVertexAttributes();
+    output.writeInt(attributes.size());
+    for (int i = 0; i < attributes.size(); i++) {
+      VertexAttribute attribute = attributes.get(i);
+      output.writeInt(attribute.usage);
+      output.writeInt(attribute.numComponents);
+      output.writeString(attribute.alias);
+      output.writeInt(attribute.unit);
     }
 
-    indiBuff.position(oldPosition);
+    int floatsPerVertex  = attributes.vertexSize / 4;
+    int max              = face.vertexCount * floatsPerVertex;
+    int start            = face.vertexOffset * floatsPerVertex;
+    output.writeInt(face.vertexCount);
+    output.writeInt(max);
+    FloatBuffer vertBuff = face.mesh.getVerticesBuffer().duplicate();
+    vertBuff.limit(start + max);
+    vertBuff.position(start);
+    ensureScratch(max * 4).asFloatBuffer().put(vertBuff);
+    output.writeBytes(scratch.array(), 0, max * 4);
 
+    int indexCount       = face.meshPartSize > 0 ? face.meshPartSize : face.mesh.getNumIndices();
+    ShortBuffer indiBuff = face.mesh.getIndicesBuffer().duplicate();
+    indiBuff.limit(face.meshPartOffset + indexCount);
+    indiBuff.position(face.meshPartOffset);
+    indices              = ensure(indices, indexCount);
+    indiBuff.get(indices, 0, indexCount);
+    for (int i = 0; i < indexCount; i++) {
+      indices[i] = (short)((indices[i] & 0xFFFF) - face.vertexOffset);
+    }
+    output.writeInt(indexCount);
+    ensureScratch(indexCount * 2).asShortBuffer().put(indices, 0, indexCount);
+    output.writeBytes(scratch.array(), 0, indexCount * 2);
   }
 
   @Override
   public VoxelFaceRenderable read(Kryo kryo, Input input, Class<VoxelFaceRenderable> type) {
-    return null;
+    VoxelFaceRenderable face = new VoxelFaceRenderable();
+    face.direction.set(kryo.readObject(input, Vector3.class));
+    face.boundingBox.set(kryo.readObject(input, BoundingBox.class));
+    face.ssao                = input.readBoolean();
+    face.reflect             = input.readBoolean();
+    face.haveTransparency    = input.readBoolean();
+    face.primitiveType       = input.readInt();
+    face.triangleCount       = input.readInt();
+    face.worldTransform.set(kryo.readObject(input, Matrix4.class));
+
+    VertexAttribute[] attributes = new VertexAttribute[input.readInt()];
+    for (int i = 0; i < attributes.length; i++) {
+      int usage         = input.readInt();
+      int numComponents = input.readInt();
+      String alias      = input.readString();
+      attributes[i]     = new VertexAttribute(usage, numComponents, alias, input.readInt());
+    }
+
+    int vertexCount = input.readInt();
+    int floatCount  = input.readInt();
+    vertices        = ensure(vertices, floatCount);
+    input.readBytes(ensureScratch(floatCount * 4).array(), 0, floatCount * 4);
+    scratch.asFloatBuffer().get(vertices, 0, floatCount);
+
+    int indexCount  = input.readInt();
+    indices         = ensure(indices, indexCount);
+    input.readBytes(ensureScratch(indexCount * 2).array(), 0, indexCount * 2);
+    scratch.asShortBuffer().get(indices, 0, indexCount);
+
+    Mesh mesh = new Mesh(true, vertexCount, indexCount, attributes);
+    mesh.setVertices(vertices, 0, floatCount);
+    mesh.setIndices(indices, 0, indexCount);
+    mesh.setAutoBind(false);
+
+    face.mesh           = mesh;
+    face.vertexOffset   = 0;
+    face.vertexCount    = vertexCount;
+    face.meshPartOffset = 0;
+    face.meshPartSize   = indexCount;
+    return face;
+  }
+
+  /**
+   * Scratch buffer with at least size bytes, positioned at 0
+   */
+  private ByteBuffer ensureScratch(int size) {
+    if (scratch.capacity() < size) {
+      scratch = ByteBuffer.allocate(Math.max(size, scratch.capacity() * 2)).order(ByteOrder.LITTLE_ENDIAN);
+    }
+    scratch.clear();
+    return scratch;
+  }
+
+  private static float[] ensure(float[] array, int size) {
+    return array.length >= size ? array : new float[Math.max(size, array.length * 2)];
+  }
+
+  private static short[] ensure(short[] array, int size) {
+    return array.length >= size ? array : new short[Math.max(size, array.length * 2)];
   }
 }
@@ -11,6 +11,7 @@ import macbury.forge.blocks.Block;
 import macbury.forge.graphics.builders.Chunk;
 import macbury.forge.utils.Vector3i;
 import macbury.forge.voxel.ChunkMap;
+import macbury.forge.voxel.PalettedVoxelStorage;
 import macbury.forge.voxel.Voxel;
 
 import java.util.ArrayList;
@@ -21,8 +22,13 @@ import java.util.ArrayList;
 public class ChunkMapDataSerializer extends Serializer<ChunkMap> {
   private static final String TAG = "ChunkMapDataSerializer";
   private Vector3i tempA = new Vector3i();
-  private final static int VERSION = 2;
+  private final static int VERSION = 3;
+  /**
+   * Version that stored every voxel as separate nullable object
+   */
+  private final static int VOXEL_OBJECTS_VERSION = 2;
   private Array<Chunk> tempChunks = new Array<Chunk>();
+  private final ChunkVoxelsCodec codec = new ChunkVoxelsCodec();
   @Override
   public void write(Kryo kryo, Output output, ChunkMap object) {
     output.writeInt(VERSION);
@@ -38,15 +44,7 @@ public class ChunkMapDataSerializer extends Serializer<ChunkMap> {
         kryo.writeObject(output, chunk.position);
         kryo.writeObject(output, chunk.start);
         kryo.writeObject(output, chunk.end);
-        for (int x = chunk.start.x; x < chunk.end.x; x++) {
-          for (int y = chunk.start.y; y < chunk.end.y; y++) {
-            for (int z = chunk.start.z; z < chunk.end.z; z++) {
-              tempA.set(x,y,z);
-              Voxel voxel = object.getVoxelForPosition(x,y,z);
-              kryo.writeObjectOrNull(output, voxel, Voxel.class);
-            }
-          }
-        }
+        codec.write(output, chunk.voxels);
       }
     }
 
@@ -58,7 +56,7 @@ public class ChunkMapDataSerializer extends Serializer<ChunkMap> {
     ChunkMap map = ChunkMap.build();
 
     int version = input.readInt();
-    if (version != VERSION) {
+    if (version != VERSION && version != VOXEL_OBJECTS_VERSION) {
       throw new GdxRuntimeException("Map version is: " + version + " but current supported version is: " + VERSION);
     }
 
@@ -75,19 +73,27 @@ public class ChunkMapDataSerializer extends Serializer<ChunkMap> {
       Vector3i end           = kryo.readObject(input, Vector3i.class);
 
       map.rebuildChunkForChunkPositionIfExists(chunkPosition);
+      Chunk chunk            = map.findForChunkPosition(chunkPosition);
 
-      for (int x = start.x; x < end.x; x++) {
-        for (int y = start.y; y < end.y; y++) {
-          for (int z = start.z; z < end.z; z++) {
-            tempA.set(x,y,z);
-            Voxel voxel = kryo.readObjectOrNull(input, Voxel.class);
-            map.setQuietVoxelForPosition(voxel, tempA);
-          }
-        }
+      if (version == VOXEL_OBJECTS_VERSION) {
+        readVoxelObjects(kryo, input, chunk);
+      } else if (chunk != null) {
+        codec.read(input, chunk.voxels);
+      } else {
+        codec.read(input, new PalettedVoxelStorage(ChunkMap.CHUNK_ARRAY_SIZE));
       }
     }
 
     tempChunks.clear();
     return map;
   }
+
+  private void readVoxelObjects(Kryo kryo, Input input, Chunk chunk) {
+    for (int index = 0; index < ChunkMap.CHUNK_ARRAY_SIZE; index++) {
+      Voxel voxel = kryo.readObjectOrNull(input, Voxel.class);
+      if (chunk != null) {
+        chunk.voxels.set(index, voxel == null ? Voxel.AIR : voxel.pack());
+      }
+    }
+  }
 }
@@ -0,0 +1,123 @@
+package macbury.forge.storage.serializers.level;
+
+import com.badlogic.gdx.utils.GdxRuntimeException;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import macbury.forge.voxel.PalettedVoxelStorage;
+
+import java.util.Arrays;
+
+/**
+ * Palette and run length encoding of chunk voxels. Layout:
+ * palette size, packed voxels of palette, run count, palette index and length of every run in storage order.
+ * All numbers except palette entries are var ints. Uniform chunk takes only few bytes and terrain layers become few long runs.
+ * Codec keeps scratch arrays, so one instance must be used by one thread at time
+ */
+public class ChunkVoxelsCodec {
+  private static final int VOXEL_VALUES = 1 << 16;
+  private final int[] paletteSlots      = new int[VOXEL_VALUES];
+  private short[] palette               = new short[16];
+  private int[] runIndices              = new int[64];
+  private int[] runLengths              = new int[64];
+  private int paletteSize;
+  private int runCount;
+
+  public ChunkVoxelsCodec() {
+    Arrays.fill(paletteSlots, -1);
+  }
+
+  public void write(Output output, PalettedVoxelStorage voxels) {
+    encode(voxels);
+    output.writeVarInt(paletteSize, true);
+    for (int i = 0; i < paletteSize; i++) {
+      output.writeShort(palette[i]);
+    }
+    output.writeVarInt(runCount, true);
+    for (int i = 0; i < runCount; i++) {
+      output.writeVarInt(runIndices[i], true);
+      output.writeVarInt(runLengths[i], true);
+    }
+  }
+
+  public void read(Input input, PalettedVoxelStorage voxels) {
+    paletteSize = input.readVarInt(true);
+    if (paletteSize <= 0 || paletteSize > VOXEL_VALUES) {
+      throw new GdxRuntimeException("Invalid chunk palette size: " + paletteSize);
+    }
+    palette = ensure(palette, paletteSize);
+    for (int i = 0; i < paletteSize; i++) {
+      palette[i] = input.readShort();
+    }
+
+    runCount   = input.readVarInt(true);
+    runIndices = ensure(runIndices, runCount);
+    runLengths = ensure(runLengths, runCount);
+    int total  = 0;
+    for (int i = 0; i < runCount; i++) {
+      runIndices[i] = input.readVarInt(true);
+      runLengths[i] = input.readVarInt(true);
+      total        += runLengths[i];
+      if (runIndices[i] >= paletteSize) {
+        throw new GdxRuntimeException("Chunk run points outside of palette: " + runIndices[i]);
+      }
+    }
+    if (total != voxels.size()) {
+      throw new GdxRuntimeException("Chunk runs cover " + total + " voxels but chunk have " + voxels.size());
+    }
+
+    voxels.load(palette, paletteSize, runIndices, runLengths, runCount);
+  }
+
+  /**
+   * Build palette in order of first appearance and runs of palette indexes
+   */
+  private void encode(PalettedVoxelStorage voxels) {
+    paletteSize   = 0;
+    runCount      = 0;
+    int current   = -1;
+    int length    = 0;
+    for (int i = 0; i < voxels.size(); i++) {
+      int index = paletteIndex(voxels.get(i));
+      if (index == current) {
+        length++;
+      } else {
+        if (length > 0) {
+          addRun(current, length);
+        }
+        current = index;
+        length  = 1;
+      }
+    }
+    addRun(current, length);
+
+    for (int i = 0; i < paletteSize; i++) {
+      paletteSlots[palette[i] & 0xFFFF] = -1;
+    }
+  }
+
+  private int paletteIndex(short voxel) {
+    int slot = voxel & 0xFFFF;
+    if (paletteSlots[slot] == -1) {
+      palette                 = ensure(palette, paletteSize + 1);
+      palette[paletteSize]    = voxel;
+      paletteSlots[slot]      = paletteSize++;
+    }
+    return paletteSlots[slot];
+  }
+
+  private void addRun(int index, int length) {
+    runIndices           = ensure(runIndices, runCount + 1);
+    runLengths           = ensure(runLengths, runCount + 1);
+    runIndices[runCount] = index;
+    runLengths[runCount] = length;
+    runCount++;
+  }
+
+  private static short[] ensure(short[] array, int size) {
+    return array.length >= size ? array : Arrays.copyOf(array, Math.max(size, array.length * 2));
+  }
+
+  private static int[] ensure(int[] array, int size) {
+    return array.length >= size ? array : Arrays.copyOf(array, Math.max(size, array.length * 2));
+  }
+}
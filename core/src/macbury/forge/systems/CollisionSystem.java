@@ -9,7 +9,7 @@ import com.badlogic.gdx.math.Vector3;
 import macbury.forge.components.CollisionComponent;
 import macbury.forge.components.MovementComponent;
 import macbury.forge.components.PositionComponent;
-import macbury.forge.octree.OctreeNode;
+import macbury.forge.octree.Octree;
 import macbury.forge.utils.Vector3i;
 import macbury.forge.voxel.ChunkMap;
 
@@ -23,13 +23,13 @@ public class CollisionSystem extends IteratingSystem {
   private ComponentMapper<PositionComponent> pm   = ComponentMapper.getFor(PositionComponent.class);
   private ComponentMapper<MovementComponent> mm   = ComponentMapper.getFor(MovementComponent.class);
   private ComponentMapper<CollisionComponent> cm  = ComponentMapper.getFor(CollisionComponent.class);
-  private final OctreeNode octree;
+  private final Octree octree;
   private final ChunkMap map;
   private final Vector3 tempA;
   private final Vector3 tempB;
   private final Vector3i tempC;
 
-  public CollisionSystem(ChunkMap terrainMap, OctreeNode octree) {
+  public CollisionSystem(ChunkMap terrainMap, Octree octree) {
     super(Family.getFor(MovementComponent.class, PositionComponent.class, CollisionComponent.class));
     this.octree = octree;
     this.map    = terrainMap;
@@ -9,31 +9,30 @@ import macbury.forge.components.PositionComponent;
 import macbury.forge.graphics.camera.GameCamera;
 import macbury.forge.graphics.frustrum.FrustrumDebugAndRenderer;
 import macbury.forge.level.Level;
-import macbury.forge.octree.OctreeNode;
+import macbury.forge.octree.Octree;
 import macbury.forge.octree.OctreeObject;
-import macbury.forge.octree.query.FrustrumClassFilterOctreeQuery;
+import macbury.forge.octree.query.PositionFrustrumOctreeQuery;
 
 /**
  * Created by macbury on 22.10.14.
  */
 public class CullingSystem extends IteratingSystem {
-  private final OctreeNode rootNode;
+  private final Octree rootNode;
   private final GameCamera camera;
   private final Array<OctreeObject> octreeVisibleObjects;
   private final FrustrumDebugAndRenderer frustrumDebugger;
-  private final FrustrumClassFilterOctreeQuery frustrumOctreeQuery;
+  private final PositionFrustrumOctreeQuery frustrumOctreeQuery;
   private ComponentMapper<PositionComponent>   pm = ComponentMapper.getFor(PositionComponent.class);
   private float cameraOldFieldOfView;
 
   public CullingSystem(Level level) {
     super(Family.getFor(PositionComponent.class));
 
-    this.rootNode              = level.octree;
+    this.rootNode              = level.dynamicOctree;
     this.camera                = level.camera;
     this.frustrumDebugger      = level.frustrumDebugger;
     this.octreeVisibleObjects  = new Array<OctreeObject>();
-    this.frustrumOctreeQuery   = new FrustrumClassFilterOctreeQuery();
-    frustrumOctreeQuery.setKlass(PositionComponent.class);
+    this.frustrumOctreeQuery   = new PositionFrustrumOctreeQuery();
   }
 
   @Override
@@ -41,7 +40,6 @@ public class CullingSystem extends IteratingSystem {
     super.update(deltaTime);
     octreeVisibleObjects.clear();
     camera.update();
-    //camera.extendFov();
     frustrumOctreeQuery.setFrustum(camera.normalOrDebugFrustrum());
     rootNode.retrieve(octreeVisibleObjects, frustrumOctreeQuery);
 
@@ -49,8 +47,6 @@ public class CullingSystem extends IteratingSystem {
       PositionComponent position = (PositionComponent) octreeVisibleObjects.get(i);
       position.visible  = true;
     }
-
-    //camera.restoreFov();
   }
 
   @Override
@@ -26,7 +26,7 @@ import macbury.forge.graphics.builders.Chunk;
 import macbury.forge.graphics.camera.GameCamera;
 import macbury.forge.graphics.frustrum.FrustrumDebugAndRenderer;
 import macbury.forge.level.Level;
-import macbury.forge.octree.OctreeNode;
+import macbury.forge.octree.Octree;
 import macbury.forge.terrain.TerrainEngine;
 import macbury.forge.utils.Vector3i;
 
@@ -40,9 +40,9 @@ public class DebugSystem extends IteratingSystem implements Disposable {
   private static final float DEBUG_BOX_OFFSET_SIZE        = DEBUG_BOX_OFFSET_POSITION * 2;
   private final VoxelBatch batch;
   private final GameCamera camera;
-  private final OctreeNode dynamicOctree;
+  private final Octree dynamicOctree;
   private final FrustrumDebugAndRenderer frustrumDebugger;
-  private final OctreeNode terrainOctree;
+  private final Octree terrainOctree;
   private final TerrainEngine terrain;
   private final RenderContext context;
   private final Level level;
@@ -58,8 +58,8 @@ public class DebugSystem extends IteratingSystem implements Disposable {
     this.level            = level;
     this.batch            = level.batch;
     this.context          = level.renderContext;
-    this.dynamicOctree    = level.octree;
-    this.terrainOctree    = level.octree;
+    this.dynamicOctree    = level.dynamicOctree;
+    this.terrainOctree    = level.staticOctree;
     this.camera           = level.camera;
     this.terrain          = level.terrainEngine;
     this.frustrumDebugger = level.frustrumDebugger;
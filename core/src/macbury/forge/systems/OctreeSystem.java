@@ -1,55 +1,75 @@
 package macbury.forge.systems;
 
 import com.badlogic.ashley.core.ComponentMapper;
+import com.badlogic.ashley.core.Engine;
 import com.badlogic.ashley.core.Entity;
+import com.badlogic.ashley.core.EntityListener;
 import com.badlogic.ashley.core.Family;
-import com.badlogic.ashley.systems.IntervalIteratingSystem;
+import com.badlogic.ashley.systems.IteratingSystem;
+import com.badlogic.ashley.utils.ImmutableArray;
+import com.badlogic.gdx.utils.ObjectMap;
 import macbury.forge.components.PositionComponent;
 import macbury.forge.level.Level;
-import macbury.forge.voxel.ChunkMap;
-import macbury.forge.octree.OctreeNode;
-import macbury.forge.terrain.TerrainEngine;
+import macbury.forge.octree.Octree;
 
 /**
  * Created by macbury on 20.10.14.
- * Rebuild periodicaly whole tree for all entities passed into it
+ * Keeps entities in dynamic octree. Entity is inserted once when added to engine and moved only when its bounds leave node it is in,
+ * chunks are kept in static octree by {@link macbury.forge.terrain.TerrainEngine}
  */
-public class OctreeSystem extends IntervalIteratingSystem {
-  private static final float UPDATE_EVERY = 0.25f;
-  private final OctreeNode tree;
-  private final TerrainEngine terrainEngine;
-  private final ChunkMap map;
+public class OctreeSystem extends IteratingSystem implements EntityListener {
+  private final Family family;
+  private final Octree tree;
   private ComponentMapper<PositionComponent> pm  = ComponentMapper.getFor(PositionComponent.class);
-  private boolean firstBoot = true;
+  /**
+   * Component of each entity in tree, entity can lose its component before it is removed from family
+   */
+  private final ObjectMap<Entity, PositionComponent> positions;
 
   public OctreeSystem(Level level) {
-    super(Family.getFor(PositionComponent.class), UPDATE_EVERY);
-    this.tree          = level.octree;
-    this.terrainEngine = level.terrainEngine;
-    this.map           = level.terrainMap;
+    super(Family.getFor(PositionComponent.class));
+    this.family    = Family.getFor(PositionComponent.class);
+    this.tree      = level.dynamicOctree;
+    this.positions = new ObjectMap<Entity, PositionComponent>();
   }
 
   @Override
-  public void update(float deltaTime) {
-    super.update(deltaTime);
-    if (firstBoot) {
-      updateInterval();
-      firstBoot = false;
+  public void addedToEngine(Engine engine) {
+    super.addedToEngine(engine);
+    engine.addEntityListener(family, this);
+    ImmutableArray<Entity> entities = engine.getEntitiesFor(family);
+    for (int i = 0; i < entities.size(); i++) {
+      entityAdded(entities.get(i));
     }
   }
 
   @Override
-  protected void updateInterval() {
-    tree.clear();
-    for (int i = 0; i < map.chunks.size; i++) {
-      tree.insert(map.chunks.get(i));
+  public void removedFromEngine(Engine engine) {
+    super.removedFromEngine(engine);
+    engine.removeEntityListener(this);
+    for (PositionComponent position : positions.values()) {
+      tree.remove(position);
     }
-    super.updateInterval();
+    positions.clear();
   }
 
   @Override
-  protected void processEntity(Entity entity) {
+  public void entityAdded(Entity entity) {
     PositionComponent position = pm.get(entity);
+    positions.put(entity, position);
     tree.insert(position);
   }
+
+  @Override
+  public void entityRemoved(Entity entity) {
+    PositionComponent position = positions.remove(entity);
+    if (position != null) {
+      tree.remove(position);
+    }
+  }
+
+  @Override
+  protected void processEntity(Entity entity, float deltaTime) {
+    tree.update(pm.get(entity));
+  }
 }
@@ -24,7 +24,7 @@ public class LevelEntityEngine extends PooledEngine implements Disposable {
     movement  = new MovementSystem(level);
     culling   = new CullingSystem(level);
     player    = new PlayerSystem();
-    collision = new CollisionSystem(level.terrainMap, level.octree);
+    collision = new CollisionSystem(level.terrainMap, level.dynamicOctree);
 
     addSystem(culling);
     addSystem(collision);
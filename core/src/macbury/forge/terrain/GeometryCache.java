@@ -0,0 +1,296 @@
+package macbury.forge.terrain;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.files.FileHandle;
+import com.badlogic.gdx.utils.GdxRuntimeException;
+import macbury.forge.ForgE;
+import macbury.forge.blocks.Block;
+import macbury.forge.graphics.builders.ChunkGeometry;
+import macbury.forge.graphics.builders.VoxelFaceGeometry;
+import macbury.forge.graphics.mesh.MeshVertexInfo;
+import macbury.forge.level.LevelState;
+import macbury.forge.voxel.ChunkMap;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Packed chunk geometry stored next to level file, so level that did not change since last run is not meshed again.
+ * Every chunk has one entry keyed by {@link macbury.forge.graphics.builders.ChunkSnapshot#contentHash()}, whole cache is
+ * dropped when blocks version changes, see {@link macbury.forge.blocks.BlocksProvider#getVersion()}.
+ * Layout: magic, version, blocks version, chunk count, table with hash, offset and length of entry for every chunk, entries.
+ * Cache file is read with one bulk read into direct buffer and entries are decoded from it on meshing workers
+ */
+public class GeometryCache {
+  private static final String TAG         = "GeometryCache";
+  public static final String FILE_EXT     = ".geometry";
+  private static final int MAGIC          = 0x4647454F; // FGEO
+  /**
+   * Bump when terrain builder output or vertex format changes
+   */
+  private static final int VERSION        = 2;
+  private static final int FILE_HEADER    = 20;
+  private static final int TABLE_ENTRY    = 16;
+  /**
+   * Side, six ints with ranges and counts, transparency and alignment flags and bounding box
+   */
+  private static final int FACE_SIZE      = 1 + 6 * 4 + 1 + 6 * 4;
+  private static final MeshVertexInfo.AttributeType[] ATTRIBUTES = MeshVertexInfo.AttributeType.values();
+  private static final Block.Side[] SIDES = Block.Side.values();
+
+  private final File file;
+  private final ChunkMap map;
+  private final long blocksVersion;
+  private final long[] hashes;
+  private final int[] offsets;
+  private final int[] lengths;
+  /**
+   * Entries built in this run, they replace entries from file
+   */
+  private final byte[][] entries;
+  private ByteBuffer loaded;
+  private boolean modified;
+
+  public GeometryCache(File file, ChunkMap map, long blocksVersion) {
+    int chunkCount     = map.chunks.size;
+    this.file          = file;
+    this.map           = map;
+    this.blocksVersion = blocksVersion;
+    this.hashes        = new long[chunkCount];
+    this.offsets       = new int[chunkCount];
+    this.lengths       = new int[chunkCount];
+    this.entries       = new byte[chunkCount][];
+    if (file.exists()) {
+      try {
+        read();
+      } catch (IOException e) {
+        Gdx.app.error(TAG, "Could not read geometry cache " + file.getAbsolutePath(), e);
+      }
+    }
+  }
+
+  /**
+   * Cache for level saved on disk
+   * @return null if level was not saved yet
+   */
+  public static GeometryCache forLevel(LevelState state, ChunkMap map) {
+    FileHandle levelFile = ForgE.levels.getFileHandle(state.getId());
+    if (levelFile == null) {
+      return null;
+    }
+    File file    = new File(levelFile.file().getParentFile(), levelFile.nameWithoutExtension() + FILE_EXT);
+    long version = ForgE.blocks.getVersion() ^ (ForgE.config.binaryGreedyMeshing ? 1 : 0); // both meshers produce different faces
+    return new GeometryCache(file, map, version);
+  }
+
+  private void read() throws IOException {
+    FileInputStream input = new FileInputStream(file);
+    try {
+      FileChannel channel = input.getChannel();
+      ByteBuffer buffer   = ByteBuffer.allocateDirect((int)channel.size());
+      while (buffer.hasRemaining()) {
+        if (channel.read(buffer) < 0) {
+          throw new IOException("Geometry cache is truncated");
+        }
+      }
+      buffer.flip();
+
+      if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION || buffer.getLong() != blocksVersion || buffer.getInt() != hashes.length) {
+        Gdx.app.log(TAG, "Geometry cache is outdated: " + file.getAbsolutePath());
+        return;
+      }
+      for (int i = 0; i < hashes.length; i++) {
+        hashes[i]  = buffer.getLong();
+        offsets[i] = buffer.getInt();
+        lengths[i] = buffer.getInt();
+      }
+      this.loaded = buffer;
+    } finally {
+      input.close();
+    }
+  }
+
+  /**
+   * Fill geometry with cached faces and meshes if chunk snapshot did not change. Can be called on any thread
+   * @return true if geometry was found
+   */
+  public boolean load(ChunkGeometry geometry) {
+    if (ForgE.config.generateWireframe) {
+      return false;
+    }
+    long hash    = geometry.snapshot.contentHash();
+    int index    = map.chunkIndex(geometry.chunk);
+    ByteBuffer entry;
+    synchronized (this) {
+      if (hashes[index] != hash) {
+        return false;
+      } else if (entries[index] != null) {
+        entry = ByteBuffer.wrap(entries[index]);
+      } else if (lengths[index] > 0) {
+        entry = loaded.duplicate();
+        entry.limit(offsets[index] + lengths[index]);
+        entry.position(offsets[index]);
+      } else {
+        return false;
+      }
+    }
+    decode(entry, geometry);
+    return true;
+  }
+
+  /**
+   * Store packed geometry of chunk. Can be called on any thread
+   */
+  public void store(ChunkGeometry geometry) {
+    if (ForgE.config.generateWireframe) {
+      return;
+    }
+    long hash    = geometry.snapshot.contentHash();
+    int index    = map.chunkIndex(geometry.chunk);
+    byte[] entry = encode(geometry);
+    synchronized (this) {
+      hashes[index]  = hash;
+      entries[index] = entry;
+      lengths[index] = 0;
+      modified       = true;
+    }
+  }
+
+  /**
+   * Write cache file if any entry changed
+   */
+  public synchronized void save() {
+    if (!modified) {
+      return;
+    }
+
+    File tempFile = new File(file.getPath() + ".tmp");
+    try {
+      FileOutputStream output = new FileOutputStream(tempFile, false);
+      try {
+        FileChannel channel = output.getChannel();
+        ByteBuffer table    = ByteBuffer.allocate(FILE_HEADER + hashes.length * TABLE_ENTRY);
+        table.putInt(MAGIC).putInt(VERSION).putLong(blocksVersion).putInt(hashes.length);
+        int offset = table.capacity();
+        for (int i = 0; i < hashes.length; i++) {
+          int length = entries[i] != null ? entries[i].length : lengths[i];
+          table.putLong(hashes[i]).putInt(offset).putInt(length);
+          offset    += length;
+        }
+        table.flip();
+        writeFully(channel, table);
+
+        for (int i = 0; i < hashes.length; i++) {
+          if (entries[i] != null) {
+            writeFully(channel, ByteBuffer.wrap(entries[i]));
+          } else if (lengths[i] > 0) {
+            ByteBuffer entry = loaded.duplicate();
+            entry.limit(offsets[i] + lengths[i]);
+            entry.position(offsets[i]);
+            writeFully(channel, entry);
+          }
+        }
+      } finally {
+        output.close();
+      }
+
+      if ((file.exists() && !file.delete()) || !tempFile.renameTo(file)) {
+        throw new IOException("Could not move " + tempFile.getAbsolutePath() + " to " + file.getAbsolutePath());
+      }
+      modified = false;
+    } catch (IOException e) {
+      throw new GdxRuntimeException("Could not write geometry cache " + file.getAbsolutePath(), e);
+    }
+  }
+
+  private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+  }
+
+  private static byte[] encode(ChunkGeometry geometry) {
+    int attributeCount = geometry.attributes == null ? 0 : geometry.attributes.length;
+    int size           = 4 + attributeCount + 4 + 4 + geometry.faces.size * FACE_SIZE;
+    for (int i = 0; i < geometry.meshVertices.size; i++) {
+      size += 8 + geometry.meshVertices.get(i).length * 4 + geometry.meshIndices.get(i).length * 2;
+    }
+
+    ByteBuffer buffer = ByteBuffer.allocate(size);
+    buffer.putInt(attributeCount);
+    for (int i = 0; i < attributeCount; i++) {
+      buffer.put((byte)geometry.attributes[i].ordinal());
+    }
+
+    buffer.putInt(geometry.meshVertices.size);
+    for (int i = 0; i < geometry.meshVertices.size; i++) {
+      float[] vertices = geometry.meshVertices.get(i);
+      short[] indices  = geometry.meshIndices.get(i);
+      buffer.putInt(vertices.length);
+      buffer.asFloatBuffer().put(vertices);
+      buffer.position(buffer.position() + vertices.length * 4);
+      buffer.putInt(indices.length);
+      buffer.asShortBuffer().put(indices);
+      buffer.position(buffer.position() + indices.length * 2);
+    }
+
+    buffer.putInt(geometry.faces.size);
+    for (VoxelFaceGeometry face : geometry.faces) {
+      buffer.put((byte)face.face.ordinal());
+      buffer.putInt(face.meshIndex).putInt(face.vertexOffset).putInt(face.vertexCount);
+      buffer.putInt(face.indexOffset).putInt(face.indexCount).putInt(face.triangleCount);
+      buffer.put((byte)((face.haveTransparency ? 1 : 0) | (face.alignedToFace ? 2 : 0)));
+      buffer.putFloat(face.boundingBox.min.x).putFloat(face.boundingBox.min.y).putFloat(face.boundingBox.min.z);
+      buffer.putFloat(face.boundingBox.max.x).putFloat(face.boundingBox.max.y).putFloat(face.boundingBox.max.z);
+    }
+    return buffer.array();
+  }
+
+  private static void decode(ByteBuffer buffer, ChunkGeometry geometry) {
+    int attributeCount  = buffer.getInt();
+    geometry.attributes = attributeCount == 0 ? null : new MeshVertexInfo.AttributeType[attributeCount];
+    for (int i = 0; i < attributeCount; i++) {
+      geometry.attributes[i] = ATTRIBUTES[buffer.get()];
+    }
+
+    int meshCount = buffer.getInt();
+    geometry.meshVertices.clear();
+    geometry.meshIndices.clear();
+    for (int i = 0; i < meshCount; i++) {
+      float[] vertices = new float[buffer.getInt()];
+      buffer.asFloatBuffer().get(vertices);
+      buffer.position(buffer.position() + vertices.length * 4);
+      short[] indices  = new short[buffer.getInt()];
+      buffer.asShortBuffer().get(indices);
+      buffer.position(buffer.position() + indices.length * 2);
+      geometry.meshVertices.add(vertices);
+      geometry.meshIndices.add(indices);
+    }
+
+    int faceCount = buffer.getInt();
+    geometry.faces.clear();
+    for (int i = 0; i < faceCount; i++) {
+      VoxelFaceGeometry face = new VoxelFaceGeometry();
+      face.attributes        = geometry.attributes;
+      face.face              = SIDES[buffer.get()];
+      face.meshIndex         = buffer.getInt();
+      face.vertexOffset      = buffer.getInt();
+      face.vertexCount       = buffer.getInt();
+      face.indexOffset       = buffer.getInt();
+      face.indexCount        = buffer.getInt();
+      face.triangleCount     = buffer.getInt();
+      byte flags             = buffer.get();
+      face.haveTransparency  = (flags & 1) != 0;
+      face.alignedToFace     = (flags & 2) != 0;
+      face.boundingBox.min.set(buffer.getFloat(), buffer.getFloat(), buffer.getFloat());
+      face.boundingBox.max.set(buffer.getFloat(), buffer.getFloat(), buffer.getFloat());
+      face.boundingBox.set(face.boundingBox.min, face.boundingBox.max);
+      geometry.faces.add(face);
+    }
+    geometry.fromCache = true;
+  }
+}
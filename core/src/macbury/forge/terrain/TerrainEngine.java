@@ -2,6 +2,8 @@ package macbury.forge.terrain;
 
 import com.badlogic.gdx.Gdx;
 import com.badlogic.gdx.files.FileHandle;
+import com.badlogic.gdx.math.Frustum;
+import com.badlogic.gdx.math.MathUtils;
 import com.badlogic.gdx.math.Matrix4;
 import com.badlogic.gdx.math.Vector3;
 import com.badlogic.gdx.math.collision.BoundingBox;
@@ -14,60 +16,119 @@ import macbury.forge.graphics.batch.renderable.BaseRenderable;
 import macbury.forge.graphics.batch.renderable.BaseRenderableProvider;
 import macbury.forge.graphics.batch.renderable.VoxelFaceRenderable;
 import macbury.forge.graphics.builders.Chunk;
+import macbury.forge.graphics.builders.ChunkGeometry;
 import macbury.forge.graphics.builders.TerrainBuilder;
 import macbury.forge.graphics.camera.GameCamera;
 import macbury.forge.level.Level;
 import macbury.forge.voxel.ChunkMap;
-import macbury.forge.octree.OctreeNode;
+import macbury.forge.octree.Octree;
 import macbury.forge.octree.OctreeObject;
-import macbury.forge.octree.query.FrustrumClassFilterOctreeQuery;
+import macbury.forge.octree.query.ChunkFrustrumOctreeQuery;
 import macbury.forge.utils.ActionTimer;
+import macbury.forge.utils.FrameScheduler;
 import macbury.forge.utils.Vector3i;
 
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
+import java.util.Arrays;
 import java.util.Comparator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 
 /**
  * Created by macbury on 23.10.14.
  */
-public class TerrainEngine implements Disposable, ActionTimer.TimerListener, BaseRenderableProvider {
+public class TerrainEngine implements Disposable, ActionTimer.TimerListener, BaseRenderableProvider, FrameScheduler.WorkQueue {
   private static final float UPDATE_EVERY    = 0.02f;
   private static final String TAG = "TerrainEngine";
-  private static final int CHUNK_TO_REBUILD_PER_TICK = 10;
+  /**
+   * How many chunks per worker thread can wait in meshing queue
+   */
+  private static final int JOBS_PER_WORKER = 4;
+  /**
+   * How many chunks can be paged in from level file per update
+   */
+  private static final int PAGE_IN_PER_UPDATE = 2;
+  /**
+   * Visible faces are found again only when camera moved or turned more than this since last occlusion.
+   * Occlusion uses frustum wider than camera, so small moves do not reveal faces that were culled
+   */
+  private static final float OCCLUSION_MOVE_DISTANCE = 0.25f;
+  private static final float OCCLUSION_TURN_COS      = MathUtils.cosDeg(2f);
   private final ActionTimer       timer;
   private final ChunkMap          map;
-  private final OctreeNode        octree;
+  private final Octree            octree;
   private final GameCamera        camera;
-  private final TerrainBuilder    builder;
+  private final ExecutorService   meshingExecutor;
+  private final int               maxJobsInFlight;
+  private final ConcurrentLinkedQueue<TerrainBuilder> builders;
+  private final ConcurrentLinkedQueue<ChunkGeometry>  builtGeometry;
+  private final GeometryCache     geometryCache;
+  /**
+   * Built geometry moved from {@link #builtGeometry} on OpenGL thread, waiting for upload by {@link FrameScheduler}
+   */
+  private final Array<ChunkGeometry> pendingUploads;
+  /**
+   * Chunks gained or lost geometry since last occlusion
+   */
+  private boolean                 visibilityDirty;
+  private int                     jobsInFlight;
   public  final Array<Chunk>      chunks;
   public  final Array<VoxelFaceRenderable> visibleFaces;
+  /**
+   * Faces in frustum skipped by last occlusion because camera is behind them, see {@link #facesAway(VoxelFaceRenderable, Vector3)}
+   */
+  public  int                     skippedFaces;
+  public  long                    skippedTriangles;
   public  final Array<OctreeObject> tempObjects;
   public  final Matrix4 tempMat = new Matrix4();
   public  final Vector3 tempA  = new Vector3();
   public  final Vector3 tempC  = new Vector3();
   public  final Vector3 tempD  = new Vector3();
   public  final Vector3i tempB = new Vector3i();
+  private final Vector3 uploadCenter = new Vector3();
+  private final Vector3 occlusionPosition  = new Vector3();
+  private final Vector3 occlusionDirection = new Vector3();
+  private final Vector3 occlusionUp        = new Vector3();
+  private final Matrix4 occlusionProjection = new Matrix4();
+  private Frustum occlusionDebugFrustum;
   private  final BoundingBox tempBox;
   private final Array<Chunk> visibleChunks;
   private final Comparator<Chunk> sorter;
-  private final FrustrumClassFilterOctreeQuery frustrumOctreeQuery;
+  private final ChunkFrustrumOctreeQuery frustrumOctreeQuery;
 
   public TerrainEngine(Level level) {
     this.timer = new ActionTimer(UPDATE_EVERY, this);
     this.timer.start();
-    this.frustrumOctreeQuery  = new FrustrumClassFilterOctreeQuery();
+    this.frustrumOctreeQuery  = new ChunkFrustrumOctreeQuery();
     this.tempObjects          = new Array<OctreeObject>();
     this.visibleChunks        = new Array<Chunk>();
     this.visibleFaces         = new Array<VoxelFaceRenderable>();
     this.chunks               = new Array<Chunk>();
     this.map                  = level.terrainMap;
-    this.octree               = level.octree;
+    this.octree               = level.staticOctree;
     this.camera               = level.camera;
-    this.builder              = new TerrainBuilder(map);
+    this.builders             = new ConcurrentLinkedQueue<TerrainBuilder>();
+    this.builtGeometry        = new ConcurrentLinkedQueue<ChunkGeometry>();
+    this.pendingUploads       = new Array<ChunkGeometry>();
+    int workers               = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+    this.maxJobsInFlight      = workers * JOBS_PER_WORKER;
+    this.meshingExecutor      = Executors.newFixedThreadPool(workers, new ThreadFactory() {
+      private int count = 0;
+      @Override
+      public Thread newThread(Runnable runnable) {
+        Thread thread = new Thread(runnable, TAG + "-" + (count++));
+        thread.setDaemon(true);
+        thread.setPriority(Thread.NORM_PRIORITY - 1);
+        return thread;
+      }
+    });
     this.tempBox              = new BoundingBox();
-    frustrumOctreeQuery.setKlass(Chunk.class);
+    this.geometryCache        = ForgE.config.cacheGeometry ? GeometryCache.forLevel(level.state, map) : null;
+    ForgE.scheduler.add(this, FrameScheduler.PRIORITY_TERRAIN);
 
     this.sorter               = new Comparator<Chunk>() {
       @Override
@@ -88,24 +149,49 @@ public class TerrainEngine implements Disposable, ActionTimer.TimerListener, Bas
 
   public void update() {
     timer.update(Gdx.graphics.getDeltaTime());
+    map.loadChunksAround(camera.normalOrDebugPosition(), camera.far, PAGE_IN_PER_UPDATE);
     rebuild();
+    if (visibilityDirty) {
+      occulsion();
+    }
   }
 
   @Override
   public void onTimerTick(ActionTimer timer) {
-    occulsion();
+    if (cameraMovedSinceOcclusion()) {
+      occulsion();
+    }
+  }
+
+  private boolean cameraMovedSinceOcclusion() {
+    Frustum debugFrustum = camera.haveDebugFrustrum() ? camera.getDebugFrustrum() : null;
+    if (debugFrustum != null || occlusionDebugFrustum != null) {
+      return debugFrustum != occlusionDebugFrustum;
+    }
+    return occlusionPosition.dst2(camera.position) > OCCLUSION_MOVE_DISTANCE * OCCLUSION_MOVE_DISTANCE ||
+        occlusionDirection.dot(camera.direction) < OCCLUSION_TURN_COS ||
+        occlusionUp.dot(camera.up) < OCCLUSION_TURN_COS ||
+        !Arrays.equals(occlusionProjection.val, camera.projection.val);
   }
 
   /**
    * Check which chunks with its renderables are visible!
    */
   private void occulsion() {
+    visibilityDirty = false;
+    occlusionDebugFrustum = camera.haveDebugFrustrum() ? camera.getDebugFrustrum() : null;
+    occlusionPosition.set(camera.position);
+    occlusionDirection.set(camera.direction);
+    occlusionUp.set(camera.up);
+    occlusionProjection.set(camera.projection);
     visibleFaces.clear();
     visibleChunks.clear();
     tempObjects.clear();
+    skippedFaces     = 0;
+    skippedTriangles = 0;
 
-    camera.extendFov();
-    frustrumOctreeQuery.setFrustum(camera.normalOrDebugFrustrum());
+    Frustum frustum = camera.normalOrDebugExtendedFrustrum();
+    frustrumOctreeQuery.setFrustum(frustum);
     octree.retrieve(tempObjects, frustrumOctreeQuery);
 
     tempC.set(camera.normalOrDebugPosition());
@@ -116,51 +202,156 @@ public class TerrainEngine implements Disposable, ActionTimer.TimerListener, Bas
         visibleChunks.add(visibleChunk);
         for (int i = 0; i < visibleChunk.renderables.size; i++) {
           VoxelFaceRenderable renderable = visibleChunk.renderables.get(i);
-          //http://www.gamasutra.com/view/feature/131773/a_compact_method_for_backface_.php?print=1
-          //tempA.set(renderable.boundingBox.getCenter());
-          if (camera.boundsInFrustum(renderable.boundingBox) /*&& tempA.sub(tempC).scl(camera.direction).nor().dot(renderable.direction) >= 0f*/) {
+          if (!frustum.boundsInFrustum(renderable.boundingBox)) {
+            continue;
+          }
+          if (!renderable.haveTransparency && renderable.alignedToDirection && facesAway(renderable, tempC)) {
+            skippedFaces++;
+            skippedTriangles += renderable.triangleCount;
+          } else {
             visibleFaces.add(renderable);
           }
         }
       }
     }
     visibleChunks.sort(sorter);
-    camera.restoreFov();
   }
 
-  public boolean rebuild() {
-    return rebuild(CHUNK_TO_REBUILD_PER_TICK);
+  /**
+   * True if camera is behind plane of every face in renderable, so all of them would be back face culled. Camera must be
+   * {@link #OCCLUSION_MOVE_DISTANCE} behind nearest face, because result is kept until camera moves that far.
+   * Transparent faces are rendered from both sides and faces with slanted or rotated shape parts can face other ways, so
+   * caller never skips them
+   * http://www.gamasutra.com/view/feature/131773/a_compact_method_for_backface_.php?print=1
+   */
+  private static boolean facesAway(VoxelFaceRenderable renderable, Vector3 eye) {
+    Vector3 direction = renderable.direction;
+    BoundingBox box   = renderable.boundingBox;
+    float nearestFace = direction.x * (direction.x >= 0 ? box.min.x : box.max.x)
+                      + direction.y * (direction.y >= 0 ? box.min.y : box.max.y)
+                      + direction.z * (direction.z >= 0 ? box.min.z : box.max.z);
+    return direction.dot(eye) < nearestFace - OCCLUSION_MOVE_DISTANCE;
   }
 
   /**
-   * Rebuild pending chunks in queue, return true if everything has been rebuilded
-   * @return
+   * Send pending chunks to meshing workers. Finished geometry is uploaded by {@link FrameScheduler}, see {@link #runNext()}
+   * @return true if everything has been rebuilded and uploaded
    */
-  public boolean rebuild(int i) {
-    if (map.chunkToRebuild.size > 0) {
+  public boolean rebuild() {
+    if (map.haveChunksToRebuild()) {
       ForgE.blocks.loadAtlasAndUvsIfNull();
-      Gdx.app.log(TAG, "Chunks to rebuild: " + map.chunkToRebuild.size);
-      while(map.chunkToRebuild.size > 0) {
-        Chunk chunk = map.chunkToRebuild.pop();
-        buildChunkGeometry(chunk);
-        i--;
-        if (i <= 0) break;
+      Gdx.app.log(TAG, "Chunks to rebuild: " + map.countChunksToRebuild());
+      map.setRebuildFocus(camera.normalOrDebugPosition(), camera.normalOrDebugDirection(), camera.normalOrDebugFrustrum());
+      while(map.haveChunksToRebuild() && jobsInFlight < maxJobsInFlight) {
+        submit(map.popChunkToRebuild());
       }
-      occulsion();
     }
 
-    return map.chunkToRebuild.size == 0;
+    return !map.haveChunksToRebuild() && jobsInFlight == 0;
   }
 
-  private void buildChunkGeometry(Chunk chunk) {
-    chunk.clearFaces();
-    builder.begin(); {
-      builder.cursor.set(chunk);
+  @Override
+  public boolean hasWork() {
+    return pendingUploads.size > 0 || !builtGeometry.isEmpty();
+  }
 
-      while(builder.next()) {
-        builder.buildFaceForChunk(chunk);
+  /**
+   * Upload built geometry of chunk that is in camera frustum and nearest to camera, then of hidden chunks by distance
+   */
+  @Override
+  public void runNext() {
+    ChunkGeometry geometry;
+    while((geometry = builtGeometry.poll()) != null) {
+      pendingUploads.add(geometry);
+    }
+
+    int bestIndex        = -1;
+    boolean bestVisible  = false;
+    float bestDst2       = Float.MAX_VALUE;
+    Vector3 eye          = camera.normalOrDebugPosition();
+    for (int i = 0; i < pendingUploads.size; i++) {
+      Chunk chunk     = pendingUploads.get(i).chunk;
+      uploadCenter.set(chunk.size).scl(0.5f).add(chunk.worldPosition);
+      boolean visible = camera.normalOrDebugFrustrum().boundsInFrustum(uploadCenter, chunk.size);
+      float dst2      = uploadCenter.dst2(eye);
+      if (bestIndex == -1 || (visible && !bestVisible) || (visible == bestVisible && dst2 < bestDst2)) {
+        bestIndex   = i;
+        bestVisible = visible;
+        bestDst2    = dst2;
+      }
+    }
+
+    if (bestIndex != -1) {
+      jobsInFlight--;
+      applyChunkGeometry(pendingUploads.removeIndex(bestIndex));
+      visibilityDirty = true;
+    }
+  }
+
+  /**
+   * Snapshot chunk voxels and queue it for meshing on worker thread. Palette of chunk is compacted first, so chunk shrinks
+   * back after voxels were removed
+   */
+  private void submit(Chunk chunk) {
+    chunk.voxels.compact();
+    final ChunkGeometry geometry = new ChunkGeometry(chunk);
+    geometry.snapshot(map);
+    jobsInFlight++;
+    meshingExecutor.execute(new Runnable() {
+      @Override
+      public void run() {
+        TerrainBuilder builder = builders.poll();
+        if (builder == null) {
+          builder = new TerrainBuilder(map);
+        }
+        try {
+          if (geometryCache == null || !geometryCache.load(geometry)) {
+            builder.assemble(geometry);
+            if (geometryCache != null) {
+              geometryCache.store(geometry);
+            }
+          }
+        } catch (Throwable e) {
+          geometry.error = e;
+        } finally {
+          builders.add(builder);
+          builtGeometry.add(geometry);
+        }
       }
-    } builder.end();
+    });
+  }
+
+  /**
+   * Write geometry cache on meshing worker, so OpenGL thread is not blocked
+   */
+  public void flushGeometryCache() {
+    if (geometryCache != null) {
+      meshingExecutor.execute(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            geometryCache.save();
+          } catch (Throwable e) {
+            Gdx.app.error(TAG, "Could not save geometry cache", e);
+          }
+        }
+      });
+    }
+  }
+
+  private void applyChunkGeometry(ChunkGeometry geometry) {
+    if (geometry.isStale()) {
+      return;
+    }
+
+    if (geometry.error != null) {
+      Gdx.app.error(TAG, "Could not build geometry for chunk " + geometry.chunk.position.toString(), geometry.error);
+      geometry.chunk.slices.restore();
+      return;
+    }
+
+    Chunk chunk = geometry.chunk;
+    geometry.applyTo();
 
     if (chunk.isEmpty()) {
       remove(chunk);
@@ -168,21 +359,39 @@ public class TerrainEngine implements Disposable, ActionTimer.TimerListener, Bas
       chunk.updateBoundingBox();
       if (!chunks.contains(chunk, true)) {
         chunks.add(chunk);
+        octree.insert(chunk);
       }
     }
   }
 
   private void remove(Chunk chunk) {
-    chunks.removeValue(chunk, true);
+    if (chunks.removeValue(chunk, true)) {
+      octree.remove(chunk);
+    }
     chunk.dispose();
   }
 
   @Override
   public void dispose() {
+    ForgE.scheduler.remove(this);
+    meshingExecutor.shutdownNow();
+    pendingUploads.clear();
+    if (geometryCache != null) {
+      try {
+        geometryCache.save();
+      } catch (RuntimeException e) {
+        Gdx.app.error(TAG, "Could not save geometry cache", e);
+      }
+    }
+    builtGeometry.clear();
+    jobsInFlight = 0;
     while(chunks.size > 0) {
       remove(chunks.pop());
     }
-    builder.dispose();
+    TerrainBuilder builder;
+    while((builder = builders.poll()) != null) {
+      builder.dispose();
+    }
   }
 
   @Override
@@ -0,0 +1,93 @@
+package macbury.forge.utils;
+
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.IntArray;
+import com.badlogic.gdx.utils.TimeUtils;
+
+/**
+ * Runs queued work on OpenGL thread until milliseconds budget of frame is used, instead of fixed number of items per frame.
+ * Queues are drained in order of priority and every queue decides which of its items goes first.
+ * At least one item is run on every call, so work always moves forward
+ */
+public class FrameScheduler {
+  /**
+   * Textures and other assets that level waits for
+   */
+  public static final int PRIORITY_ASSETS  = 0;
+  /**
+   * Built chunk geometry waiting for upload
+   */
+  public static final int PRIORITY_TERRAIN = 10;
+
+  public interface WorkQueue {
+    boolean hasWork();
+
+    /**
+     * Run most important item of queue
+     */
+    void runNext();
+  }
+
+  private final Array<WorkQueue> queues;
+  private final IntArray priorities;
+  private int itemsRun;
+
+  public FrameScheduler() {
+    this.queues     = new Array<WorkQueue>();
+    this.priorities = new IntArray();
+  }
+
+  /**
+   * @param priority lower runs first
+   */
+  public void add(WorkQueue queue, int priority) {
+    remove(queue);
+    int index = 0;
+    while (index < priorities.size && priorities.get(index) <= priority) {
+      index++;
+    }
+    queues.insert(index, queue);
+    priorities.insert(index, priority);
+  }
+
+  public void remove(WorkQueue queue) {
+    int index = queues.indexOf(queue, true);
+    if (index != -1) {
+      queues.removeIndex(index);
+      priorities.removeIndex(index);
+    }
+  }
+
+  /**
+   * Run queued work until budget is used or there is nothing to do
+   * @param budgetMs how many milliseconds can be spend in this call
+   */
+  public void run(float budgetMs) {
+    long deadline = TimeUtils.nanoTime() + (long)(budgetMs * 1000000L);
+    itemsRun      = 0;
+    WorkQueue queue;
+    while ((queue = nextQueue()) != null) {
+      queue.runNext();
+      itemsRun++;
+      if (TimeUtils.nanoTime() >= deadline) {
+        break;
+      }
+    }
+  }
+
+  private WorkQueue nextQueue() {
+    for (int i = 0; i < queues.size; i++) {
+      if (queues.get(i).hasWork()) {
+        return queues.get(i);
+      }
+    }
+    return null;
+  }
+
+  /**
+   * How many items were run in last call of {@link #run(float)}
+   */
+  public int getItemsRun() {
+    return itemsRun;
+  }
+}
@@ -0,0 +1,20 @@
+package macbury.forge.voxel;
+
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.Disposable;
+import macbury.forge.graphics.builders.Chunk;
+
+/**
+ * Source of voxels for chunks that are not in memory yet, see {@link ChunkMap#ensureLoaded(Chunk)}
+ */
+public interface ChunkLoader extends Disposable {
+  /**
+   * Fill storage of chunk with its voxels
+   */
+  public void load(Chunk chunk);
+
+  /**
+   * Fill storages of all chunks. Loader can decode them in parallel
+   */
+  public void load(Array<Chunk> chunks);
+}
@@ -1,6 +1,7 @@
 package macbury.forge.voxel;
 
 import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.math.Frustum;
 import com.badlogic.gdx.math.MathUtils;
 import com.badlogic.gdx.math.Vector3;
 import com.badlogic.gdx.utils.Array;
@@ -9,9 +10,13 @@ import macbury.forge.ForgE;
 import macbury.forge.blocks.Block;
 import macbury.forge.blocks.BlocksProvider;
 import macbury.forge.graphics.builders.Chunk;
+import macbury.forge.graphics.builders.ChunkSlices;
 import macbury.forge.procedular.PerlinNoise;
 import macbury.forge.utils.Vector3i;
 
+import java.util.BitSet;
+import java.util.Comparator;
+
 /**
  * Created by macbury on 19.10.14.
  */
@@ -22,18 +27,36 @@ public class ChunkMap extends VoxelMap {
   public static final Vector3 TERRAIN_TILE_SIZE   = new Vector3(1,1,1);
   private static final String TAG = "ChunkMap";
   public final Array<Chunk> chunks;
-  public final Array<Chunk> chunkToRebuild;
+  /**
+   * Chunks waiting for rebuild, nearest to camera first, see {@link #setRebuildFocus(Vector3, Vector3, Frustum)}
+   */
+  private final ChunkRebuildQueue chunkToRebuild;
+  /**
+   * Bit for each chunk grid index that is already waiting in chunkToRebuild
+   */
+  private final BitSet chunkToRebuildFlags;
 
   private int countChunksX;
   private int countChunksY;
   private int countChunksZ;
+  /**
+   * Chunks indexed by chunk position, used to route voxel reads and writes to chunk storage
+   */
+  private Chunk[] chunkGrid;
+  /**
+   * Chunks with voxels still on disk and loader that pages them in
+   */
+  private final Array<Chunk> unloadedChunks;
+  private ChunkLoader chunkLoader;
+  private final Vector3 tempCenter = new Vector3();
   private Vector3i tempA = new Vector3i();
-  private Vector3i tempB = new Vector3i();
 
   public ChunkMap(Vector3 tileSize, BlocksProvider blocksProvider) {
     super(tileSize, blocksProvider);
     chunks                    = new Array<Chunk>();
-    chunkToRebuild            = new Array<Chunk>();
+    chunkToRebuild            = new ChunkRebuildQueue(CHUNK_SIZE * tileSize.x * 0.5f);
+    chunkToRebuildFlags       = new BitSet();
+    unloadedChunks            = new Array<Chunk>(false, 16);
   }
 
   public void buildFloor() {
@@ -49,6 +72,51 @@ public class ChunkMap extends VoxelMap {
     Gdx.app.log(TAG, "Builded all floor");
   }
 
+  @Override
+  protected void initializeStorage() {
+    chunkGrid = null;
+  }
+
+  /**
+   * Offset of voxel inside chunk storage for voxel position in map
+   */
+  public static int localIndex(int x, int y, int z) {
+    return ((x % CHUNK_SIZE) * CHUNK_SIZE + (y % CHUNK_SIZE)) * CHUNK_SIZE + (z % CHUNK_SIZE);
+  }
+
+  private Chunk chunkForVoxelPosition(int x, int y, int z) {
+    return findForChunkPosition(x / CHUNK_SIZE, y / CHUNK_SIZE, z / CHUNK_SIZE);
+  }
+
+  public int chunkIndex(int chunkX, int chunkY, int chunkZ) {
+    return (chunkX * countChunksY + chunkY) * countChunksZ + chunkZ;
+  }
+
+  public int chunkIndex(Chunk chunk) {
+    return chunkIndex(chunk.position.x, chunk.position.y, chunk.position.z);
+  }
+
+  @Override
+  public short getVoxelDataForPosition(int x, int y, int z) {
+    if (isOutOfBounds(x, y, z)) {
+      return Voxel.AIR;
+    }
+    Chunk chunk = chunkForVoxelPosition(x, y, z);
+    return chunk == null ? Voxel.AIR : chunk.voxels.get(localIndex(x, y, z));
+  }
+
+  @Override
+  public void setVoxelDataForPosition(short data, int x, int y, int z) {
+    if (!isOutOfBounds(x, y, z)) {
+      Chunk chunk = chunkForVoxelPosition(x, y, z);
+      if (chunk != null) {
+        ensureLoaded(chunk);
+        chunk.voxels.set(localIndex(x, y, z), data);
+        chunk.modified = true;
+      }
+    }
+  }
+
   public Vector3i voxelPositionToChunkPosition(int x, int y, int z){
     return tempA.set(x/CHUNK_SIZE,y/CHUNK_SIZE,z/CHUNK_SIZE);
   }
@@ -59,11 +127,14 @@ public class ChunkMap extends VoxelMap {
 
 
   public Chunk findForChunkPosition(Vector3i position) {
-    for (Chunk chunk : chunks) {
-      if (chunk.position.equals(position))
-        return chunk;
+    return findForChunkPosition(position.x, position.y, position.z);
+  }
+
+  public Chunk findForChunkPosition(int chunkX, int chunkY, int chunkZ) {
+    if (chunkGrid == null || chunkX < 0 || chunkY < 0 || chunkZ < 0 || chunkX >= countChunksX || chunkY >= countChunksY || chunkZ >= countChunksZ) {
+      return null;
     }
-    return null;
+    return chunkGrid[chunkIndex(chunkX, chunkY, chunkZ)];
   }
 
   public void setQuickBlockIdForPosition(byte blockId, int x, int y, int z) {
@@ -71,10 +142,9 @@ public class ChunkMap extends VoxelMap {
   }
 
   @Override
-  public Voxel setBlockIdForPosition(byte blockId, int x, int y, int z) {
-    Voxel voxel = super.setBlockIdForPosition(blockId, x, y, z);
+  public void setBlockIdForPosition(byte blockId, int x, int y, int z) {
+    super.setBlockIdForPosition(blockId, x, y, z);
     rebuildChunkAroundPosition(x, y, z);
-    return voxel;
   }
 
   @Override
@@ -83,56 +153,32 @@ public class ChunkMap extends VoxelMap {
     rebuildChunkAroundPosition(x, y, z);
   }
 
+  /**
+   * Mark slices that can change after editing voxel. For every face direction it is slice with voxel itself and slice with
+   * voxel behind it, whose face looks at edited voxel. That slice can belong to neighbour chunk
+   */
   private void rebuildChunkAroundPosition(int x, int y, int z) {
-    Vector3i chunkPosition = voxelPositionToChunkPosition(x, y, z);
-    Chunk    centerChunk   = findForChunkPosition(chunkPosition);
-
-    if (centerChunk == null) {
-      return;
-    }
-
-    addToRebuild(centerChunk);
-
-    if (centerChunk.start.x == x) {
-      //Gdx.app.log(TAG, "X left border!");
-      tempB.set(chunkPosition).x -= 1;
-      rebuildChunkForChunkPositionIfExists(tempB);
-    }
-
-    if (centerChunk.end.x - 1 == x) {
-      //Gdx.app.log(TAG, "X right border!");
-      tempB.set(chunkPosition).x += 1;
-      rebuildChunkForChunkPositionIfExists(tempB);
-    }
-
-    if (centerChunk.start.y == y) {
-      //Gdx.app.log(TAG, "Y top border!");
-      tempB.set(chunkPosition).y += 1;
-      rebuildChunkForChunkPositionIfExists(tempB);
-    }
-
-    if (centerChunk.end.y - 1 == y) {
-      //Gdx.app.log(TAG, "Y bottom border!");
-      tempB.set(chunkPosition).y += 1;
-      rebuildChunkForChunkPositionIfExists(tempB);
+    for (Block.Side face : ChunkSlices.FACES) {
+      rebuildSliceForPosition(face, x, y, z);
+      rebuildSliceForPosition(face, x - face.direction.x, y - face.direction.y, z - face.direction.z);
     }
+  }
 
-    if (centerChunk.start.z == z) {
-      //Gdx.app.log(TAG, "Z Front border!");
-      tempB.set(chunkPosition).z -= 1;
-      rebuildChunkForChunkPositionIfExists(tempB);
+  private void rebuildSliceForPosition(Block.Side face, int x, int y, int z) {
+    if (isOutOfBounds(x, y, z)) {
+      return;
     }
-
-    if (centerChunk.end.z - 1 == z) {
-      //Gdx.app.log(TAG, "Z back border!");
-      tempB.set(chunkPosition).z += 1;
-      rebuildChunkForChunkPositionIfExists(tempB);
+    Chunk chunk = chunkForVoxelPosition(x, y, z);
+    if (chunk != null && chunk.loaded) {
+      chunk.slices.markDirty(face, ChunkSlices.sliceFor(face, x % CHUNK_SIZE, y % CHUNK_SIZE, z % CHUNK_SIZE));
+      addToRebuild(chunk);
     }
   }
 
   public void rebuildChunkForChunkPositionIfExists(Vector3i chunkPosition) {
     Chunk chunk            = findForChunkPosition(chunkPosition);
     if (chunk != null) {
+      chunk.slices.markAllDirty();
       addToRebuild(chunk);
     }
   }
@@ -142,6 +188,7 @@ public class ChunkMap extends VoxelMap {
     if (chunk == null) {
       throw new GdxRuntimeException("Chunk is null!!");
     } else {
+      chunk.slices.markAllDirty();
       addToRebuild(chunk);
     }
   }
@@ -167,12 +214,163 @@ public class ChunkMap extends VoxelMap {
     rebuildChunkAroundPosition(x, y, z);
   }
 
+  /**
+   * Set loader for chunks marked as not loaded. Previous loader is disposed
+   */
+  public void setChunkLoader(ChunkLoader loader) {
+    if (chunkLoader != null && chunkLoader != loader) {
+      chunkLoader.dispose();
+    }
+    chunkLoader = loader;
+  }
+
+  public ChunkLoader getChunkLoader() {
+    return chunkLoader;
+  }
+
+  /**
+   * Mark chunk voxels as still on disk. They will be paged in by chunk loader
+   */
+  public void markUnloaded(Chunk chunk) {
+    if (chunk.loaded) {
+      chunk.loaded = false;
+      unloadedChunks.add(chunk);
+    }
+  }
+
+  /**
+   * Page in chunk voxels if they are still on disk and rebuild it with border slices of its neighbours
+   * @return true if chunk was loaded by this call
+   */
+  public boolean ensureLoaded(Chunk chunk) {
+    if (chunk.loaded) {
+      return false;
+    }
+    unloadedChunks.removeValue(chunk, true);
+    if (chunkLoader != null) {
+      chunkLoader.load(chunk);
+    }
+    onChunkLoaded(chunk);
+    return true;
+  }
+
+  /**
+   * Rebuild loaded chunk and border slices of its loaded neighbours
+   */
+  private void onChunkLoaded(Chunk chunk) {
+    chunk.loaded = true;
+    chunk.slices.markAllDirty();
+    addToRebuild(chunk);
+    for (Block.Side face : ChunkSlices.FACES) {
+      Chunk neighbour = findForChunkPosition(chunk.position.x - face.direction.x, chunk.position.y - face.direction.y, chunk.position.z - face.direction.z);
+      if (neighbour != null && neighbour.loaded) {
+        int borderSlice = face.direction.x + face.direction.y + face.direction.z > 0 ? CHUNK_SIZE - 1 : 0;
+        neighbour.slices.markDirty(face, borderSlice);
+        addToRebuild(neighbour);
+      }
+    }
+  }
+
+  /**
+   * Page in nearest chunks in distance from position
+   * @param maxChunks how many chunks can be loaded in this call
+   * @return number of loaded chunks
+   */
+  public int loadChunksAround(Vector3 position, float distance, int maxChunks) {
+    int loaded = 0;
+    float maxDst2 = distance * distance;
+    while (loaded < maxChunks && unloadedChunks.size > 0) {
+      Chunk nearest     = null;
+      float nearestDst2 = maxDst2;
+      for (int i = 0; i < unloadedChunks.size; i++) {
+        Chunk chunk = unloadedChunks.get(i);
+        float dst2  = chunkCenterDst2(chunk, position);
+        if (dst2 <= nearestDst2) {
+          nearest     = chunk;
+          nearestDst2 = dst2;
+        }
+      }
+
+      if (nearest == null) {
+        break;
+      }
+      ensureLoaded(nearest);
+      loaded++;
+    }
+    return loaded;
+  }
+
+  /**
+   * Page in all chunks that are still on disk in one batch, see {@link ChunkLoader#load(Array)}
+   */
+  public void loadAll() {
+    if (unloadedChunks.size == 0) {
+      return;
+    }
+    Array<Chunk> chunksToLoad = new Array<Chunk>(unloadedChunks);
+    unloadedChunks.clear();
+    pageIn(chunksToLoad);
+  }
+
+  /**
+   * Page in chunks in one batch. Chunks that are already loaded are skipped
+   */
+  public void load(Array<Chunk> chunksToLoad) {
+    Array<Chunk> batch = new Array<Chunk>(chunksToLoad.size);
+    for (Chunk chunk : chunksToLoad) {
+      if (!chunk.loaded && unloadedChunks.removeValue(chunk, true)) {
+        batch.add(chunk);
+      }
+    }
+    pageIn(batch);
+  }
+
+  private void pageIn(Array<Chunk> batch) {
+    if (chunkLoader != null && batch.size > 0) {
+      chunkLoader.load(batch);
+    }
+    for (Chunk chunk : batch) {
+      onChunkLoaded(chunk);
+    }
+  }
+
+  /**
+   * Collect chunks still on disk in distance from position, nearest first
+   */
+  public Array<Chunk> unloadedChunksAround(final Vector3 position, float distance, Array<Chunk> out) {
+    float maxDst2 = distance * distance;
+    for (Chunk chunk : unloadedChunks) {
+      if (chunkCenterDst2(chunk, position) <= maxDst2) {
+        out.add(chunk);
+      }
+    }
+    out.sort(new Comparator<Chunk>() {
+      @Override
+      public int compare(Chunk a, Chunk b) {
+        return Float.compare(chunkCenterDst2(a, position), chunkCenterDst2(b, position));
+      }
+    });
+    return out;
+  }
+
+  private float chunkCenterDst2(Chunk chunk, Vector3 position) {
+    return tempCenter.set(chunk.size).scl(0.5f).add(chunk.worldPosition).dst2(position);
+  }
+
+  public int countUnloadedChunks() {
+    return unloadedChunks.size;
+  }
+
   public void splitIntoChunks() {
     Gdx.app.log(TAG, "Splitting into chunks");
     chunks.clear();
+    unloadedChunks.clear();
+    chunkToRebuild.clear();
+    chunkToRebuildFlags.clear();
     this.countChunksX = width / CHUNK_SIZE;
     this.countChunksY = height / CHUNK_SIZE;
     this.countChunksZ = depth / CHUNK_SIZE;
+    this.chunkGrid    = new Chunk[countChunksX * countChunksY * countChunksZ];
     for(int chunkX = 0; chunkX < countChunksX; chunkX++) {
       for(int chunkY = 0; chunkY < countChunksY; chunkY++) {
         for(int chunkZ = 0; chunkZ < countChunksZ; chunkZ++) {
@@ -183,6 +381,7 @@ public class ChunkMap extends VoxelMap {
           chunk.end.set(chunk.start).add(CHUNK_SIZE, CHUNK_SIZE, CHUNK_SIZE);
           chunk.size.set(CHUNK_SIZE, CHUNK_SIZE, CHUNK_SIZE).scl(voxelSize);
           chunks.add(chunk);
+          chunkGrid[chunkIndex(chunkX, chunkY, chunkZ)] = chunk;
         }
       }
     }
@@ -190,11 +389,40 @@ public class ChunkMap extends VoxelMap {
   }
 
   private void addToRebuild(Chunk chunk) {
-    if (chunkToRebuild.indexOf(chunk, true) == -1){
+    int index = chunkIndex(chunk);
+    if (!chunkToRebuildFlags.get(index)) {
+      chunkToRebuildFlags.set(index);
       chunkToRebuild.add(chunk);
     }
   }
 
+  public boolean haveChunksToRebuild() {
+    return chunkToRebuild.size() > 0;
+  }
+
+  public int countChunksToRebuild() {
+    return chunkToRebuild.size();
+  }
+
+  /**
+   * Chunks nearest to camera and inside its frustum are rebuilt first. Priorities are recomputed only when camera moved or turned enough
+   */
+  public void setRebuildFocus(Vector3 position, Vector3 direction, Frustum frustum) {
+    chunkToRebuild.setFocus(position, direction, frustum);
+  }
+
+  /**
+   * Take next chunk from rebuild queue
+   * @return chunk or null if queue is empty
+   */
+  public Chunk popChunkToRebuild() {
+    Chunk chunk = chunkToRebuild.pop();
+    if (chunk != null) {
+      chunkToRebuildFlags.clear(chunkIndex(chunk));
+    }
+    return chunk;
+  }
+
   public void findChunksWithData(Array<Chunk> out) {
     out.clear();
     for(Chunk chunk : chunks) {
@@ -204,21 +432,22 @@ public class ChunkMap extends VoxelMap {
     }
   }
 
-  public boolean isAnySolidVoxelsInChunk(Chunk chunk) {
-    for (int x = chunk.start.x; x < chunk.end.x; x++) {
-      for (int y = chunk.start.y; y < chunk.end.y; y++) {
-        for (int z = chunk.start.z; z < chunk.end.z; z++) {
-          tempA.set(x,y,z);
-          if (isNotAir(tempA)) {
-            return true;
-          }
-        }
+  /**
+   * @return true if voxels of any chunk changed since level was saved
+   */
+  public boolean isModified() {
+    for (int i = 0; i < chunks.size; i++) {
+      if (chunks.get(i).modified) {
+        return true;
       }
     }
-
     return false;
   }
 
+  public boolean isAnySolidVoxelsInChunk(Chunk chunk) {
+    return !chunk.voxels.isEmpty();
+  }
+
   @Override
   public void dispose() {
     super.dispose();
@@ -227,10 +456,20 @@ public class ChunkMap extends VoxelMap {
     }
     chunks.clear();
     chunkToRebuild.clear();
+    chunkToRebuildFlags.clear();
+    unloadedChunks.clear();
+    setChunkLoader(null);
+    chunkGrid = null;
   }
 
   public void rebuildAll() {
-    chunkToRebuild.addAll(chunks);
+    for (int i = 0; i < chunks.size; i++) {
+      Chunk chunk = chunks.get(i);
+      chunk.slices.markAllDirty();
+      if (chunk.loaded) {
+        addToRebuild(chunk);
+      }
+    }
   }
 
   public int getCountChunksX() {
@@ -0,0 +1,142 @@
+package macbury.forge.voxel;
+
+import com.badlogic.gdx.math.Frustum;
+import com.badlogic.gdx.math.MathUtils;
+import com.badlogic.gdx.math.Vector3;
+import macbury.forge.graphics.builders.Chunk;
+
+/**
+ * Binary heap of chunks waiting for rebuild. Chunks nearest to focus go first, chunks outside of focus frustum count as if they
+ * were twice as far. Key of chunk is computed when it is added, keys of all chunks are recomputed only when focus moves or turns enough
+ */
+public class ChunkRebuildQueue {
+  /**
+   * Keys are squared distances, so hidden chunk counts as twice as far
+   */
+  private static final float HIDDEN_DISTANCE_SCALE = 4f;
+  private static final float REFOCUS_ANGLE_COS     = MathUtils.cosDeg(15f);
+  private final float refocusDistance2;
+  private final Vector3 focus      = new Vector3();
+  private final Vector3 direction  = new Vector3();
+  private final Vector3 tempCenter = new Vector3();
+  private Frustum frustum;
+  private Chunk[] heap;
+  private float[] keys;
+  private int size;
+
+  /**
+   * @param refocusDistance how far focus must move before all chunks are prioritised again
+   */
+  public ChunkRebuildQueue(float refocusDistance) {
+    this.refocusDistance2 = refocusDistance * refocusDistance;
+    this.heap             = new Chunk[64];
+    this.keys             = new float[64];
+  }
+
+  /**
+   * Set camera position, direction and frustum used to prioritise chunks
+   * @param frustum can be null, then all chunks are treated as visible
+   */
+  public void setFocus(Vector3 position, Vector3 direction, Frustum frustum) {
+    if (this.frustum == frustum && focus.dst2(position) <= refocusDistance2 && this.direction.dot(direction) >= REFOCUS_ANGLE_COS) {
+      return;
+    }
+    this.focus.set(position);
+    this.direction.set(direction);
+    this.frustum = frustum;
+    for (int i = 0; i < size; i++) {
+      keys[i] = priority(heap[i]);
+    }
+    for (int i = size / 2 - 1; i >= 0; i--) {
+      siftDown(i);
+    }
+  }
+
+  public void add(Chunk chunk) {
+    if (size == heap.length) {
+      Chunk[] newHeap = new Chunk[size * 2];
+      float[] newKeys = new float[size * 2];
+      System.arraycopy(heap, 0, newHeap, 0, size);
+      System.arraycopy(keys, 0, newKeys, 0, size);
+      heap = newHeap;
+      keys = newKeys;
+    }
+    heap[size] = chunk;
+    keys[size] = priority(chunk);
+    siftUp(size++);
+  }
+
+  /**
+   * @return chunk with highest priority or null if queue is empty
+   */
+  public Chunk pop() {
+    if (size == 0) {
+      return null;
+    }
+    Chunk chunk = heap[0];
+    size--;
+    heap[0]     = heap[size];
+    keys[0]     = keys[size];
+    heap[size]  = null;
+    if (size > 0) {
+      siftDown(0);
+    }
+    return chunk;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public void clear() {
+    for (int i = 0; i < size; i++) {
+      heap[i] = null;
+    }
+    size = 0;
+  }
+
+  private float priority(Chunk chunk) {
+    tempCenter.set(chunk.size).scl(0.5f).add(chunk.worldPosition);
+    float dst2 = tempCenter.dst2(focus);
+    if (frustum != null && !frustum.boundsInFrustum(tempCenter, chunk.size)) {
+      dst2 *= HIDDEN_DISTANCE_SCALE;
+    }
+    return dst2;
+  }
+
+  private void siftUp(int index) {
+    Chunk chunk = heap[index];
+    float key   = keys[index];
+    while (index > 0) {
+      int parent = (index - 1) >> 1;
+      if (keys[parent] <= key) {
+        break;
+      }
+      heap[index] = heap[parent];
+      keys[index] = keys[parent];
+      index       = parent;
+    }
+    heap[index] = chunk;
+    keys[index] = key;
+  }
+
+  private void siftDown(int index) {
+    Chunk chunk = heap[index];
+    float key   = keys[index];
+    int half    = size >> 1;
+    while (index < half) {
+      int child = (index << 1) + 1;
+      if (child + 1 < size && keys[child + 1] < keys[child]) {
+        child++;
+      }
+      if (key <= keys[child]) {
+        break;
+      }
+      heap[index] = heap[child];
+      keys[index] = keys[child];
+      index       = child;
+    }
+    heap[index] = chunk;
+    keys[index] = key;
+  }
+}
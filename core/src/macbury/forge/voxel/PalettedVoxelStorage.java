@@ -0,0 +1,247 @@
+package macbury.forge.voxel;
+
+/**
+ * Voxel storage for single chunk. Every cell keeps only index into local palette of packed voxels (see {@link Voxel#pack(byte, macbury.forge.blocks.Block.Side)}).
+ * Index width grows 1/2/4/8/16 bits with palette size. Chunk filled with only one voxel type is kept uniform and does not allocate any cell data.
+ * Storage is upgraded transparently on write. Palette only grows on write, entries of voxels that were removed stay until
+ * {@link #compact()}.
+ */
+public class PalettedVoxelStorage {
+  private static final int MAX_BITS_PER_VOXEL = 16;
+  private final int size;
+  private short[] palette;
+  private int paletteSize;
+  private int bitsPerVoxel;
+  private long[] data;
+  private int solidCount;
+
+  public PalettedVoxelStorage(int size) {
+    this.size = size;
+    fill(Voxel.AIR);
+  }
+
+  /**
+   * Reset storage to uniform representation with passed voxel
+   */
+  public void fill(short voxel) {
+    voxel        = normalize(voxel);
+    palette      = new short[] { voxel };
+    paletteSize  = 1;
+    bitsPerVoxel = 0;
+    data         = null;
+    solidCount   = Voxel.isAir(voxel) ? 0 : size;
+  }
+
+  public short get(int index) {
+    if (bitsPerVoxel == 0) {
+      return palette[0];
+    } else {
+      return palette[getPaletteIndex(index)];
+    }
+  }
+
+  public void set(int index, short voxel) {
+    voxel           = normalize(voxel);
+    short current   = get(index);
+    if (current == voxel) {
+      return;
+    }
+
+    if (Voxel.isAir(current)) {
+      solidCount++;
+    } else if (Voxel.isAir(voxel)) {
+      solidCount--;
+    }
+
+    if (solidCount == 0) {
+      fill(Voxel.AIR);
+      return;
+    }
+
+    int paletteIndex = findOrAddPaletteIndex(voxel);
+    setPaletteIndex(index, paletteIndex);
+  }
+
+  /**
+   * Drop palette entries that no cell uses and shrink index width to fit. Storage can become uniform again after this.
+   * Costs one pass over cells when every entry is used
+   */
+  public void compact() {
+    if (bitsPerVoxel == 0) {
+      return;
+    }
+
+    int[] remap   = new int[paletteSize];
+    for (int i = 0; i < size; i++) {
+      remap[getPaletteIndex(i)]++;
+    }
+    int usedCount = 0;
+    for (int i = 0; i < paletteSize; i++) {
+      if (remap[i] > 0) {
+        usedCount++;
+      }
+    }
+    if (usedCount == paletteSize) {
+      return;
+    }
+
+    short[] usedPalette = new short[usedCount];
+    usedCount           = 0;
+    for (int i = 0; i < paletteSize; i++) {
+      if (remap[i] > 0) {
+        usedPalette[usedCount] = palette[i];
+        remap[i]               = usedCount++;
+      }
+    }
+    if (usedCount == 1) {
+      fill(usedPalette[0]);
+      return;
+    }
+
+    int oldBitsPerVoxel = bitsPerVoxel;
+    long[] oldData      = data;
+    palette             = usedPalette;
+    paletteSize         = usedCount;
+    bitsPerVoxel        = bitsFor(usedCount);
+    data                = new long[(size * bitsPerVoxel + 63) / 64];
+    for (int i = 0; i < size; i++) {
+      setPaletteIndex(i, remap[getPaletteIndex(oldData, oldBitsPerVoxel, i)]);
+    }
+  }
+
+  /**
+   * Replace content with runs of palette entries in storage order. Fills storage in bulk without palette lookups per voxel
+   * @param palette packed voxels, must not contain duplicates
+   * @param runIndices palette index of each run
+   * @param runLengths length of each run, all runs must cover whole storage
+   */
+  public void load(short[] palette, int paletteSize, int[] runIndices, int[] runLengths, int runCount) {
+    if (paletteSize == 1) {
+      fill(palette[0]);
+      return;
+    }
+
+    this.palette      = new short[paletteSize];
+    this.paletteSize  = paletteSize;
+    this.bitsPerVoxel = bitsFor(paletteSize);
+    this.data         = new long[(size * bitsPerVoxel + 63) / 64];
+    this.solidCount   = 0;
+    for (int i = 0; i < paletteSize; i++) {
+      this.palette[i] = normalize(palette[i]);
+    }
+
+    int index = 0;
+    for (int run = 0; run < runCount; run++) {
+      int paletteIndex = runIndices[run];
+      int end          = index + runLengths[run];
+      if (!Voxel.isAir(this.palette[paletteIndex])) {
+        solidCount += runLengths[run];
+      }
+      if (paletteIndex == 0) {
+        index = end;
+      } else {
+        for (; index < end; index++) {
+          setPaletteIndex(index, paletteIndex);
+        }
+      }
+    }
+
+    if (solidCount == 0) {
+      fill(Voxel.AIR);
+    }
+  }
+
+  private static int bitsFor(int paletteSize) {
+    int bits = 1;
+    while ((1 << bits) < paletteSize) {
+      bits *= 2;
+    }
+    return bits;
+  }
+
+  /**
+   * @return independent copy of this storage
+   */
+  public PalettedVoxelStorage copy() {
+    PalettedVoxelStorage copy = new PalettedVoxelStorage(size);
+    copy.palette              = palette.clone();
+    copy.paletteSize          = paletteSize;
+    copy.bitsPerVoxel         = bitsPerVoxel;
+    copy.data                 = data == null ? null : data.clone();
+    copy.solidCount           = solidCount;
+    return copy;
+  }
+
+  /**
+   * @return true if there is no solid voxel in storage
+   */
+  public boolean isEmpty() {
+    return solidCount == 0;
+  }
+
+  public int getSolidCount() {
+    return solidCount;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  private short normalize(short voxel) {
+    return Voxel.isAir(voxel) ? Voxel.AIR : voxel;
+  }
+
+  private int findOrAddPaletteIndex(short voxel) {
+    for (int i = 0; i < paletteSize; i++) {
+      if (palette[i] == voxel) {
+        return i;
+      }
+    }
+
+    if (paletteSize >= (1 << bitsPerVoxel)) {
+      resize(bitsPerVoxel == 0 ? 1 : bitsPerVoxel * 2);
+    }
+
+    if (paletteSize >= palette.length) {
+      short[] newPalette = new short[Math.max(2, palette.length * 2)];
+      System.arraycopy(palette, 0, newPalette, 0, paletteSize);
+      palette = newPalette;
+    }
+    palette[paletteSize] = voxel;
+    return paletteSize++;
+  }
+
+  private void resize(int newBitsPerVoxel) {
+    if (newBitsPerVoxel > MAX_BITS_PER_VOXEL) {
+      throw new IllegalStateException("Palette cannot have more than " + (1 << MAX_BITS_PER_VOXEL) + " entries");
+    }
+    int oldBitsPerVoxel = bitsPerVoxel;
+    long[] oldData      = data;
+
+    bitsPerVoxel        = newBitsPerVoxel;
+    data                = new long[(size * bitsPerVoxel + 63) / 64];
+
+    if (oldBitsPerVoxel != 0) {
+      for (int i = 0; i < size; i++) {
+        setPaletteIndex(i, getPaletteIndex(oldData, oldBitsPerVoxel, i));
+      }
+    }
+  }
+
+  private int getPaletteIndex(int index) {
+    return getPaletteIndex(data, bitsPerVoxel, index);
+  }
+
+  private static int getPaletteIndex(long[] data, int bits, int index) {
+    int bitIndex = index * bits;
+    return (int)((data[bitIndex >> 6] >>> (bitIndex & 63)) & ((1L << bits) - 1));
+  }
+
+  private void setPaletteIndex(int index, int paletteIndex) {
+    int bitIndex   = index * bitsPerVoxel;
+    int longIndex  = bitIndex >> 6;
+    int shift      = bitIndex & 63;
+    long mask      = ((1L << bitsPerVoxel) - 1) << shift;
+    data[longIndex] = (data[longIndex] & ~mask) | (((long)paletteIndex << shift) & mask);
+  }
+}
@@ -7,6 +7,16 @@ import macbury.forge.blocks.Block;
  * Created by macbury on 19.11.14.
  */
 public class Voxel {
+  /**
+   * Packed representation used by {@link VoxelMap} storage. Lower 8 bits are block id, next 4 bits are
+   * alginTo side ordinal + 1 (0 means not aligned). Packed air is always 0
+   */
+  public static final short AIR            = 0;
+  private static final int BLOCK_ID_MASK   = 0xFF;
+  private static final int ALIGN_SHIFT     = 8;
+  private static final int ALIGN_MASK      = 0xF;
+  private static final Block.Side[] SIDES  = Block.Side.values();
+
   /**
    * Block id for identification
    */
@@ -34,6 +44,52 @@ public class Voxel {
     this.alginTo = otherVoxel.alginTo;
   }
 
+  /**
+   * Copy packed voxel data into this voxel
+   * @param data
+   * @return
+   */
+  public Voxel set(short data) {
+    this.blockId = blockId(data);
+    this.alginTo = alginTo(data);
+    return this;
+  }
+
+  public Voxel set(Voxel otherVoxel) {
+    this.blockId = otherVoxel.blockId;
+    this.alginTo = otherVoxel.alginTo;
+    return this;
+  }
+
+  /**
+   * Pack this voxel into short for storage
+   * @return
+   */
+  public short pack() {
+    return pack(blockId, alginTo);
+  }
+
+  public static short pack(byte blockId, Block.Side alginTo) {
+    if (blockId == 0) {
+      return AIR;
+    }
+    int align = alginTo == null ? 0 : alginTo.ordinal() + 1;
+    return (short)((blockId & BLOCK_ID_MASK) | (align << ALIGN_SHIFT));
+  }
+
+  public static byte blockId(short data) {
+    return (byte)(data & BLOCK_ID_MASK);
+  }
+
+  public static Block.Side alginTo(short data) {
+    int align = (data >> ALIGN_SHIFT) & ALIGN_MASK;
+    return align == 0 ? null : SIDES[align - 1];
+  }
+
+  public static boolean isAir(short data) {
+    return (data & BLOCK_ID_MASK) == 0;
+  }
+
   public boolean isAir() {
     return getBlock().isAir();
   }
@@ -19,7 +19,10 @@ public class VoxelMap implements Disposable {
   private final Vector3 temp = new Vector3();
   public final Vector3 voxelSize;
   protected BlocksProvider blocks;
-  protected Voxel[][][] voxelMap;
+  /**
+   * Flat packed voxel storage, see {@link Voxel#pack(byte, Block.Side)}. Index is computed by {@link #index(int, int, int)}
+   */
+  protected short[] voxels;
   protected int width;
   protected int height;
   protected int depth;
@@ -35,17 +38,51 @@ public class VoxelMap implements Disposable {
     this.width  = width;
     this.height = height;
     this.depth  = depth;
-    voxelMap    = new Voxel[width][height][depth];
+    initializeStorage();
   }
 
-  public byte getBlockIdForPosition(int x, int y, int z) {
-    if (isOutOfBounds(x,y,z) || voxelMap[x][y][z] == null) {
-      return AIR_BLOCK_INDEX;
+  /**
+   * Allocate storage for voxels, called after dimensions are set
+   */
+  protected void initializeStorage() {
+    voxels      = new short[width * height * depth];
+  }
+
+  /**
+   * Offset of voxel in flat storage. Z is the fastest changing axis so scans in x,y,z order walk memory linearly
+   */
+  protected int index(int x, int y, int z) {
+    return (x * height + y) * depth + z;
+  }
+
+  /**
+   * Return packed voxel data for position or {@link Voxel#AIR} if position is out of bounds
+   */
+  public short getVoxelDataForPosition(int x, int y, int z) {
+    if (isOutOfBounds(x,y,z)) {
+      return Voxel.AIR;
     } else {
-      return voxelMap[x][y][z].blockId;
+      return voxels[index(x,y,z)];
+    }
+  }
+
+  public short getVoxelDataForPosition(Vector3i voxelPosition) {
+    return getVoxelDataForPosition(voxelPosition.x, voxelPosition.y, voxelPosition.z);
+  }
+
+  /**
+   * Store packed voxel data for position, does nothing if position is out of bounds
+   */
+  public void setVoxelDataForPosition(short data, int x, int y, int z) {
+    if (!isOutOfBounds(x,y,z)) {
+      voxels[index(x,y,z)] = data;
     }
   }
 
+  public byte getBlockIdForPosition(int x, int y, int z) {
+    return Voxel.blockId(getVoxelDataForPosition(x, y, z));
+  }
+
   public Block getBlockForPosition(int x, int y, int z) {
     return blocks.find(getBlockIdForPosition(x,y,z));
   }
@@ -58,21 +95,14 @@ public class VoxelMap implements Disposable {
     out.set(in.x * voxelSize.x, in.y * voxelSize.y, in.z * voxelSize.z);
   }
 
-  public Voxel setBlockIdForPosition(byte blockId, int x, int y, int z) {
+  /**
+   * Change block id for position. Alignment of voxel is preserved
+   */
+  public void setBlockIdForPosition(byte blockId, int x, int y, int z) {
     if (!isOutOfBounds(x,y,z)) {
-      if (blockId == AIR_BLOCK_INDEX) {
-        voxelMap[x][y][z] = null;
-        return null;
-      } else {
-        if (voxelMap[x][y][z] == null) {
-          voxelMap[x][y][z]     = new Voxel();
-        }
-
-        voxelMap[x][y][z].blockId = blockId;
-        return voxelMap[x][y][z];
-      }
+      short current = getVoxelDataForPosition(x, y, z);
+      setVoxelDataForPosition(Voxel.pack(blockId, Voxel.alginTo(current)), x, y, z);
     }
-    return null;
   }
 
   public void setBlockForPosition(Block block, int x, int y, int z) {
@@ -187,11 +217,30 @@ public class VoxelMap implements Disposable {
     return isNotAir(Math.round(position.x), Math.round(position.y), Math.round(position.z));
   }
 
+  /**
+   * Fills passed voxel with data for position. This is flyweight access, no objects are allocated
+   * @param out voxel to fill
+   * @return out or null if there is only air at position
+   */
+  public Voxel getVoxelForPosition(int x, int y, int z, Voxel out) {
+    short data = getVoxelDataForPosition(x, y, z);
+    if (Voxel.isAir(data)) {
+      return null;
+    } else {
+      return out.set(data);
+    }
+  }
+
+  /**
+   * Return detached copy of voxel for position or null if there is only air. Changes to returned voxel are not
+   * stored until passed to {@link #setVoxelForPosition(Voxel, Vector3i)}
+   */
   public Voxel getVoxelForPosition(int x, int y, int z) {
-    if (isOutOfBounds(x,y,z)) {
+    short data = getVoxelDataForPosition(x, y, z);
+    if (Voxel.isAir(data)) {
       return null;
     } else {
-      return voxelMap[x][y][z];
+      return new Voxel().set(data);
     }
   }
 
@@ -200,25 +249,23 @@ public class VoxelMap implements Disposable {
   }
 
   public void setAlignmentForPosition(Block.Side alignToSide, Vector3i voxelPosition) {
-    Voxel voxel = getVoxelForPosition(voxelPosition);
-    if (voxel != null) {
-      voxel.alginTo = alignToSide;
+    short data = getVoxelDataForPosition(voxelPosition);
+    if (!Voxel.isAir(data)) {
+      setVoxelDataForPosition(Voxel.pack(Voxel.blockId(data), alignToSide), voxelPosition.x, voxelPosition.y, voxelPosition.z);
     }
   }
 
   public void setVoxelForPosition(Voxel voxel, Vector3i voxelPosition) {
-    if (!isOutOfBounds(voxelPosition)) {
-      voxelMap[voxelPosition.x][voxelPosition.y][voxelPosition.z] = voxel;
-    }
+    setVoxelDataForPosition(voxel == null ? Voxel.AIR : voxel.pack(), voxelPosition.x, voxelPosition.y, voxelPosition.z);
   }
 
+  /**
+   * Return detached voxel for position, air voxel if there is nothing. Changes need to be stored with {@link #setVoxelForPosition(Voxel, Vector3i)}
+   * @return voxel or null if position is out of bounds
+   */
   public Voxel findOrInitializeVoxelForPosition(Vector3i voxelPosition) {
     if (!isOutOfBounds(voxelPosition)) {
-      if (voxelMap[voxelPosition.x][voxelPosition.y][voxelPosition.z] == null) {
-        voxelMap[voxelPosition.x][voxelPosition.y][voxelPosition.z] = new Voxel();
-      }
-
-      return voxelMap[voxelPosition.x][voxelPosition.y][voxelPosition.z];
+      return new Voxel().set(getVoxelDataForPosition(voxelPosition));
     } else {
       return null;
     }
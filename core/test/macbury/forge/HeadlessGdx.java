@@ -0,0 +1,57 @@
+package macbury.forge;
+
+import com.badlogic.gdx.Application;
+import com.badlogic.gdx.Files;
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.files.FileHandle;
+
+import java.io.File;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Minimal Gdx environment for tests of code that does not touch OpenGL. Runnables posted to OpenGL thread wait in queue
+ * until test runs them with {@link #runPosted()}, internal files are read from assets directory of core
+ */
+public class HeadlessGdx {
+  private static final File ASSETS = new File("assets");
+  private static final ConcurrentLinkedQueue<Runnable> posted = new ConcurrentLinkedQueue<Runnable>();
+
+  public static void install() {
+    posted.clear();
+    Gdx.app = (Application)Proxy.newProxyInstance(HeadlessGdx.class.getClassLoader(), new Class[] { Application.class }, new InvocationHandler() {
+      @Override
+      public Object invoke(Object proxy, Method method, Object[] args) {
+        if (method.getName().equals("postRunnable")) {
+          posted.add((Runnable)args[0]);
+        }
+        return null;
+      }
+    });
+    Gdx.files = (Files)Proxy.newProxyInstance(HeadlessGdx.class.getClassLoader(), new Class[] { Files.class }, new InvocationHandler() {
+      @Override
+      public Object invoke(Object proxy, Method method, Object[] args) {
+        if (method.getName().equals("internal")) {
+          return new FileHandle(new File(ASSETS, (String)args[0]));
+        }
+        throw new UnsupportedOperationException(method.getName());
+      }
+    });
+  }
+
+  /**
+   * Run everything posted to OpenGL thread so far
+   * @return number of runnables that were run
+   */
+  public static int runPosted() {
+    int count = 0;
+    Runnable runnable;
+    while ((runnable = posted.poll()) != null) {
+      runnable.run();
+      count++;
+    }
+    return count;
+  }
+}
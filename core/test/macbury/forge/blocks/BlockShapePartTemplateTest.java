@@ -0,0 +1,45 @@
+package macbury.forge.blocks;
+
+import com.badlogic.gdx.math.Quaternion;
+import com.badlogic.gdx.math.Vector2;
+import com.badlogic.gdx.math.Vector3;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Only templates whose every normal is direction of one side can be culled by {@link macbury.forge.terrain.TerrainEngine}
+ */
+public class BlockShapePartTemplateTest {
+  @Test
+  public void flatPartFacesItsSide() {
+    BlockShapePart part = triangle(new Vector3(0, 1, 0));
+    assertEquals(Block.Side.top, new BlockShapePartTemplate(part, new Quaternion()).facing);
+  }
+
+  @Test
+  public void rotatedFlatPartFacesRotatedSide() {
+    BlockShapePart part = triangle(new Vector3(0, 0, 1));
+    assertEquals(Block.Side.front, new BlockShapePartTemplate(part, new Quaternion()).facing);
+    assertEquals(Block.Side.back, new BlockShapePartTemplate(part, Block.Side.back.rotationHorizontal).facing);
+  }
+
+  @Test
+  public void slantedPartFacesNoSide() {
+    BlockShapePart part = triangle(new Vector3(0, 0.707107f, -0.707107f));
+    assertNull(new BlockShapePartTemplate(part, new Quaternion()).facing);
+    assertNull(new BlockShapePartTemplate(part, Block.Side.left.rotationHorizontal).facing);
+  }
+
+  private BlockShapePart triangle(Vector3 normal) {
+    BlockShapePart part = new BlockShapePart();
+    for (int i = 0; i < 3; i++) {
+      part.verticies.add(new Vector3(i, 0, 0));
+      part.normals.add(new Vector3(normal));
+      part.uvs.add(new Vector2());
+    }
+    part.triangles.add(new BlockShapeTriangle(new int[] { 0, 1, 2 }));
+    return part;
+  }
+}
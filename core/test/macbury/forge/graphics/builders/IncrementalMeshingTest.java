@@ -0,0 +1,194 @@
+package macbury.forge.graphics.builders;
+
+import com.badlogic.gdx.graphics.g2d.TextureAtlas;
+import com.badlogic.gdx.graphics.g2d.TextureRegion;
+import com.badlogic.gdx.math.Vector3;
+import macbury.forge.Config;
+import macbury.forge.ForgE;
+import macbury.forge.HeadlessGdx;
+import macbury.forge.blocks.Block;
+import macbury.forge.blocks.BlocksProvider;
+import macbury.forge.voxel.ChunkMap;
+import macbury.forge.voxel.Voxel;
+import org.junit.Before;
+import org.junit.Test;
+import org.objenesis.ObjenesisStd;
+
+import java.lang.reflect.Field;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Random edits on map built from shipped blocks. After every batch of edits geometry built only from dirty slices must be
+ * identical to geometry of full rebuild, for both meshers
+ */
+public class IncrementalMeshingTest {
+  private static final int WIDTH  = 48;
+  private static final int HEIGHT = 32;
+  private static final int DEPTH  = 48;
+  private static final int ROUNDS = 300;
+  /**
+   * Every chunk is compared against full rebuild this often
+   */
+  private static final int COMPARE_EVERY = 10;
+
+  private Block[] blocks;
+
+  @Before
+  public void setUp() throws Exception {
+    HeadlessGdx.install();
+    ForgE.config                   = new Config();
+    ForgE.config.generateWireframe = true;
+    ForgE.blocks                   = new BlocksProvider();
+    blocks                         = ForgE.blocks.list();
+    TextureAtlas atlas             = new FakeAtlas();
+    for (int i = 1; i < blocks.length; i++) {
+      blocks[i].createUVMapping(atlas);
+    }
+  }
+
+  @Test
+  public void greedyMesherMatchesFullRebuild() {
+    ForgE.config.binaryGreedyMeshing = false;
+    checkRandomEdits(new Random(3));
+  }
+
+  @Test
+  public void binaryGreedyMesherMatchesFullRebuild() {
+    ForgE.config.binaryGreedyMeshing = true;
+    checkRandomEdits(new Random(7));
+  }
+
+  private void checkRandomEdits(Random random) {
+    ChunkMap map = new ChunkMap(new Vector3(1, 1, 1), ForgE.blocks);
+    map.initialize(WIDTH, HEIGHT, DEPTH);
+    map.splitIntoChunks();
+    for (int x = 0; x < WIDTH; x++) {
+      for (int y = 0; y < HEIGHT; y++) {
+        for (int z = 0; z < DEPTH; z++) {
+          if (random.nextInt(10) < 4) {
+            map.setVoxelDataForPosition(Voxel.pack(randomBlock(random).id, randomAlignment(random)), x, y, z);
+          }
+        }
+      }
+    }
+    map.rebuildAll();
+
+    TerrainBuilder builder    = new TerrainBuilder(map);
+    Map<Chunk, String> meshed = new HashMap<Chunk, String>();
+    int compared              = 0;
+    for (int round = 0; round < ROUNDS; round++) {
+      Chunk chunk;
+      while ((chunk = map.popChunkToRebuild()) != null) {
+        meshed.put(chunk, build(builder, map, chunk));
+      }
+
+      if (round % COMPARE_EVERY == 0 || round == ROUNDS - 1) {
+        for (Chunk current : map.chunks) {
+          current.slices.markAllDirty();
+          assertEquals("Chunk " + current.position + " after round " + round, build(builder, map, current), meshed.get(current));
+          compared++;
+        }
+      }
+
+      int edits = 1 + random.nextInt(4);
+      for (int i = 0; i < edits; i++) {
+        int x = random.nextInt(WIDTH);
+        int y = random.nextInt(HEIGHT);
+        int z = random.nextInt(DEPTH);
+        if (random.nextInt(3) == 0) {
+          x = nearChunkBorder(x, random);
+        }
+        if (random.nextInt(3) == 0) {
+          y = nearChunkBorder(y, random);
+        }
+        if (random.nextBoolean()) {
+          map.setEmptyForPosition(x, y, z);
+        } else {
+          map.setBlockForPosition(randomBlock(random), x, y, z);
+        }
+      }
+    }
+    assertTrue(compared > 0);
+  }
+
+  private String build(TerrainBuilder builder, ChunkMap map, Chunk chunk) {
+    ChunkGeometry geometry = new ChunkGeometry(chunk);
+    geometry.snapshot(map);
+    builder.assemble(geometry);
+    chunk.slices.commit(geometry.slices);
+    return dump(geometry);
+  }
+
+  private Block randomBlock(Random random) {
+    return blocks[1 + random.nextInt(blocks.length - 1)];
+  }
+
+  private Block.Side randomAlignment(Random random) {
+    return random.nextInt(4) == 0 ? Block.Side.values()[1 + random.nextInt(6)] : null;
+  }
+
+  private int nearChunkBorder(int coordinate, Random random) {
+    return (coordinate / ChunkMap.CHUNK_SIZE) * ChunkMap.CHUNK_SIZE + (random.nextBoolean() ? 0 : ChunkMap.CHUNK_SIZE - 1);
+  }
+
+  /**
+   * Exact text form of packed buffers and ranges of all faces
+   */
+  private String dump(ChunkGeometry geometry) {
+    StringBuilder out = new StringBuilder();
+    for (float[] vertices : geometry.meshVertices) {
+      out.append('V');
+      for (float value : vertices) {
+        out.append(Float.floatToRawIntBits(value)).append(',');
+      }
+    }
+    for (short[] indices : geometry.meshIndices) {
+      out.append('I').append(Arrays.toString(indices));
+    }
+    for (VoxelFaceGeometry face : geometry.faces) {
+      out.append('F').append(face.face).append(face.haveTransparency).append(face.meshIndex).append(':')
+         .append(face.vertexOffset).append(':').append(face.indexOffset).append(':').append(face.indexCount).append(':')
+         .append(face.vertexCount).append(':').append(face.triangleCount).append(face.boundingBox)
+         .append(face.wireframe == null ? 0 : face.wireframe.getPoints().length);
+    }
+    return out.toString();
+  }
+
+  /**
+   * Atlas without texture, every region name gets its own random uvs
+   */
+  private static class FakeAtlas extends TextureAtlas {
+    private final Map<String, AtlasRegion> regions = new HashMap<String, AtlasRegion>();
+    private final Random random                    = new Random(1);
+
+    @Override
+    public AtlasRegion findRegion(String name) {
+      AtlasRegion region = regions.get(name);
+      if (region == null) {
+        region = new ObjenesisStd().newInstance(AtlasRegion.class);
+        setUv(region, "u", random.nextFloat());
+        setUv(region, "v", random.nextFloat());
+        setUv(region, "u2", random.nextFloat());
+        setUv(region, "v2", random.nextFloat());
+        regions.put(name, region);
+      }
+      return region;
+    }
+
+    private void setUv(AtlasRegion region, String name, float value) {
+      try {
+        Field field = TextureRegion.class.getDeclaredField(name);
+        field.setAccessible(true);
+        field.setFloat(region, value);
+      } catch (ReflectiveOperationException e) {
+        throw new RuntimeException(e);
+      }
+    }
+  }
+}
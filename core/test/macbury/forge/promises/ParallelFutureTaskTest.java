@@ -0,0 +1,175 @@
+package macbury.forge.promises;
+
+import com.badlogic.gdx.utils.Array;
+import macbury.forge.HeadlessGdx;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Fan out of worker tasks joined by {@link ParallelFutureTask}. Posted runnables are run by test in place of OpenGL thread
+ */
+public class ParallelFutureTaskTest {
+  private static final long TIMEOUT_MS = 5000;
+  private ExecutorService workers;
+  private Array<Integer> result;
+  private Exception error;
+  private Array<Integer> discarded;
+
+  @Before
+  public void setUp() {
+    HeadlessGdx.install();
+    workers   = Executors.newFixedThreadPool(3);
+    result    = null;
+    error     = null;
+    discarded = null;
+  }
+
+  @After
+  public void tearDown() {
+    workers.shutdownNow();
+  }
+
+  @Test
+  public void joinsResultsInOrderOfTasks() {
+    Array<MultiplyTask> tasks = new Array<MultiplyTask>();
+    tasks.add(new MultiplyTask(workers, 1, 30, null));
+    tasks.add(new MultiplyTask(workers, 2, 0, null));
+    tasks.add(new MultiplyTask(workers, 3, 15, null));
+    ParallelFutureTask<Integer, Integer> parallel = join(tasks);
+
+    parallel.execute(5);
+    awaitResolved();
+
+    assertNull(error);
+    assertEquals(3, result.size);
+    assertEquals(5, (int)result.get(0));
+    assertEquals(10, (int)result.get(1));
+    assertEquals(15, (int)result.get(2));
+    assertEquals(1f, parallel.getProgress(), 0f);
+  }
+
+  @Test
+  public void firstErrorRejectsAndCancelsSiblings() {
+    CountDownLatch release    = new CountDownLatch(1);
+    Array<MultiplyTask> tasks = new Array<MultiplyTask>();
+    tasks.add(new MultiplyTask(workers, 1, 0, null));
+    tasks.add(new MultiplyTask(workers, 2, 0, release));
+    tasks.add(new FailingTask(workers));
+    ParallelFutureTask<Integer, Integer> parallel = join(tasks);
+
+    parallel.execute(5);
+    awaitResolved();
+    release.countDown();
+
+    assertNull(result);
+    assertEquals("boom", error.getMessage());
+    assertTrue(tasks.get(1).isCancelled());
+    assertNotNull(discarded);
+  }
+
+  @Test
+  public void cancelCancelsTasksAndDiscardsFinishedResults() throws Exception {
+    CountDownLatch release    = new CountDownLatch(1);
+    Array<MultiplyTask> tasks = new Array<MultiplyTask>();
+    tasks.add(new MultiplyTask(workers, 1, 0, null));
+    tasks.add(new MultiplyTask(workers, 2, 0, release));
+    ParallelFutureTask<Integer, Integer> parallel = join(tasks);
+
+    parallel.execute(5);
+    long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+    while (parallel.getProgress() < 0.5f && System.currentTimeMillis() < deadline) {
+      HeadlessGdx.runPosted();
+      Thread.sleep(1);
+    }
+    parallel.cancel();
+    release.countDown();
+    workers.shutdown();
+    workers.awaitTermination(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+    HeadlessGdx.runPosted();
+
+    assertTrue(tasks.get(0).isCancelled());
+    assertTrue(tasks.get(1).isCancelled());
+    assertNull(result);
+    assertNull(error);
+    assertEquals(5, (int)discarded.get(0));
+    assertNull(discarded.get(1));
+  }
+
+  /**
+   * Join that records its result, error and discarded results
+   */
+  private ParallelFutureTask<Integer, Integer> join(Array<MultiplyTask> tasks) {
+    ParallelFutureTask<Integer, Integer> join = new ParallelFutureTask<Integer, Integer>(tasks) {
+      @Override
+      protected void discard(Array<Integer> results) {
+        discarded = new Array<Integer>(results);
+      }
+    };
+    join.then(new Promise<Array<Integer>>() {
+      @Override
+      public void success(Array<Integer> joined) {
+        result = new Array<Integer>(joined);
+      }
+
+      @Override
+      public void error(Exception reason) {
+        error = reason;
+      }
+    });
+    return join;
+  }
+
+  private void awaitResolved() {
+    long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+    while (result == null && error == null) {
+      assertTrue("Timed out", System.currentTimeMillis() < deadline);
+      HeadlessGdx.runPosted();
+      try {
+        Thread.sleep(1);
+      } catch (InterruptedException e) {
+        throw new RuntimeException(e);
+      }
+    }
+  }
+
+  private static class MultiplyTask extends WorkerFutureTask<Integer, Integer> {
+    private final int factor;
+    private final long delayMs;
+    private final CountDownLatch release;
+
+    public MultiplyTask(ExecutorService executor, int factor, long delayMs, CountDownLatch release) {
+      super(executor);
+      this.factor  = factor;
+      this.delayMs = delayMs;
+      this.release = release;
+    }
+
+    @Override
+    protected Integer call(Integer object) throws Exception {
+      Thread.sleep(delayMs);
+      if (release != null) {
+        release.await();
+      }
+      return object * factor;
+    }
+  }
+
+  private static class FailingTask extends MultiplyTask {
+    public FailingTask(ExecutorService executor) {
+      super(executor, 0, 0, null);
+    }
+
+    @Override
+    protected Integer call(Integer object) throws Exception {
+      throw new IllegalStateException("boom");
+    }
+  }
+}
@@ -29,7 +29,7 @@ public class DesktopGame implements ForgEBootListener, Thread.UncaughtExceptionH
     config.fullscreen     = false;
 
     Config forgeConfig        = new Config();
-    forgeConfig.cacheGeometry = true; //TODO: check in terrain engine if there is geometry in file
+    forgeConfig.cacheGeometry = true;
 
     ForgE engine              = new ForgE(forgeConfig);
     engine.addBootListener(this);
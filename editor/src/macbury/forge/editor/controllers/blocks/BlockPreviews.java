@@ -96,16 +96,11 @@ public class BlockPreviews implements Runnable {
     ForgE.graphics.clearAll(Color.CLEAR);
     voxelMap.setBlockForPosition(block, 1, 1, 1);
     mainChunk.clearFaces();
-    builder.begin(); {
-      builder.cursor.set(mainChunk);
-      try {
-        while(builder.next()) {
-          builder.buildFaceForChunk(mainChunk);
-        }
-      } catch (Block.NoUvForBlockSide e) {
-        Gdx.app.error(TAG, e.toString());
-      }
-    } builder.end();
+    try {
+      builder.build(mainChunk);
+    } catch (Block.NoUvForBlockSide e) {
+      Gdx.app.error(TAG, e.toString());
+    }
 
     mainChunk.updateBoundingBox();
     shader.begin(camera, renderContext, levelEnv); {
@@ -39,8 +39,8 @@ public class UpdateStatusBar implements Runnable {
     } else {
       fpsLabel.setText("FPS: " + Gdx.graphics.getFramesPerSecond());
       statusMemoryLabel.setText("Memory: " + FormatUtils.humanReadableByteCount(Gdx.app.getNativeHeap(), true) + "/" + FormatUtils.humanReadableByteCount(Gdx.app.getJavaHeap(), true));
-      statusRenderablesLabel.setText("Renderables: " + String.valueOf(projectController.editorScreen.level.batch.renderablesPerFrame));
-      statusTriangleCountLabel.setText("Triangles: " + String.valueOf(projectController.editorScreen.level.batch.trianglesPerFrame));
+      statusRenderablesLabel.setText("Renderables: " + String.valueOf(projectController.editorScreen.level.batch.renderablesPerFrame) + " (skipped " + String.valueOf(projectController.editorScreen.level.batch.facesSkippedPerFrame) + ")");
+      statusTriangleCountLabel.setText("Triangles: " + String.valueOf(projectController.editorScreen.level.batch.trianglesPerFrame) + " (skipped " + String.valueOf(projectController.editorScreen.level.batch.trianglesSkippedPerFrame) + ")");
       mapCursorPositionLabel.setText(projectController.editorScreen.selectionSystem.voxelCursor.replace.toString());
     }
   }